@@ -0,0 +1,155 @@
+package com.example.fashionai;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES20;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.GLSketchPreprocessor;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.android.SketchPreprocessor;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the preprocessing shaders in an offscreen context and checks them against
+ * SketchPreprocessor, the CPU path the camera renderer falls back to.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GLSketchPreprocessorTest {
+
+    private static final int SIZE = 256;
+    // the shaders clamp at the border where GaussianBlur reflects, so the blur radius is skipped
+    private static final int BORDER = 10;
+
+    private EGLDisplay display;
+    private EGLContext context;
+    private EGLSurface surface;
+
+    @Before
+    public void setUp() {
+        assumeTrue(OpenCVLoader.initDebug());
+
+        display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        int[] version = new int[2];
+        assertTrue(EGL14.eglInitialize(display, version, 0, version, 1));
+        int[] configAttribs = {
+                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                EGL14.EGL_SURFACE_TYPE, EGL14.EGL_PBUFFER_BIT,
+                EGL14.EGL_RED_SIZE, 8, EGL14.EGL_GREEN_SIZE, 8, EGL14.EGL_BLUE_SIZE, 8, EGL14.EGL_ALPHA_SIZE, 8,
+                EGL14.EGL_NONE };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        assertTrue(EGL14.eglChooseConfig(display, configAttribs, 0, configs, 0, 1, numConfigs, 0));
+        assertTrue(numConfigs[0] > 0);
+        context = EGL14.eglCreateContext(display, configs[0], EGL14.EGL_NO_CONTEXT,
+                new int[]{EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE}, 0);
+        surface = EGL14.eglCreatePbufferSurface(display, configs[0],
+                new int[]{EGL14.EGL_WIDTH, 1, EGL14.EGL_HEIGHT, 1, EGL14.EGL_NONE}, 0);
+        assertTrue(EGL14.eglMakeCurrent(display, surface, surface, context));
+    }
+
+    @After
+    public void tearDown() {
+        if (display == null) return;
+        EGL14.eglMakeCurrent(display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+        EGL14.eglDestroySurface(display, surface);
+        EGL14.eglDestroyContext(display, context);
+        EGL14.eglTerminate(display);
+    }
+
+    @Test
+    public void matchesCpuPath_integerRatio() {
+        // 4 x 3 source texels per output pixel, which the gray pass averages exactly
+        assertMatchesCpuPath(1024, 768, 2.0, 8.0);
+    }
+
+    @Test
+    public void matchesCpuPath_fractionalRatio() {
+        // 2.5 x 1.875 texels per output pixel: the taps sample the area instead of weighting it
+        assertMatchesCpuPath(640, 480, 3.0, 24.0);
+    }
+
+    private void assertMatchesCpuPath(int width, int height, double maxMeanDiff, double maxDiff) {
+        Mat frame = Mat.allocateDirect(height, width, CvType.CV_8UC4);
+        fillTestPattern(frame);
+
+        int[] texture = new int[1];
+        GLES20.glGenTextures(1, texture, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture[0]);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, frame.asByteBuffer());
+
+        GLSketchPreprocessor gpu = new GLSketchPreprocessor(SIZE, false);
+        SketchPreprocessor cpu = new SketchPreprocessor(SIZE);
+        Mat gpuSketch = Mat.allocateDirect(SIZE, SIZE, CvType.CV_8UC4);
+        Mat cpuSketch = new Mat(SIZE, SIZE, CvType.CV_8UC4);
+        Mat diff = new Mat();
+        try {
+            assertTrue(gpu.isAvailable());
+            gpu.process(texture[0], width, height, gpuSketch.asByteBuffer());
+            assertEquals(GLES20.GL_NO_ERROR, GLES20.glGetError());
+            cpu.process(frame, cpuSketch);
+
+            Rect inner = new Rect(BORDER, BORDER, SIZE - 2 * BORDER, SIZE - 2 * BORDER);
+            Mat gpuInner = gpuSketch.submat(inner);
+            Mat cpuInner = cpuSketch.submat(inner);
+            Core.absdiff(gpuInner, cpuInner, diff);
+            gpuInner.release();
+            cpuInner.release();
+
+            Mat gray = new Mat();
+            Imgproc.cvtColor(diff, gray, Imgproc.COLOR_RGBA2GRAY);
+            double mean = Core.mean(gray).val[0];
+            double max = Core.minMaxLoc(gray).maxVal;
+            gray.release();
+            assertTrue("mean difference " + mean, mean <= maxMeanDiff);
+            assertTrue("max difference " + max, max <= maxDiff);
+        } finally {
+            gpu.release();
+            cpu.release();
+            GLES20.glDeleteTextures(1, texture, 0);
+            frame.release();
+            gpuSketch.release();
+            cpuSketch.release();
+            diff.release();
+        }
+    }
+
+    // smooth random shapes plus a few hard edges, kept away from black where the dodge
+    // magnifies rounding differences
+    private static void fillTestPattern(Mat frame) {
+        Mat small = new Mat(12, 16, CvType.CV_8UC4);
+        Core.randu(small, 96, 256);
+        Mat large = new Mat();
+        Imgproc.resize(small, large, new Size(frame.cols(), frame.rows()), 0, 0, Imgproc.INTER_CUBIC);
+        Imgproc.rectangle(large, new Point(frame.cols() / 4, frame.rows() / 4),
+                new Point(frame.cols() / 2, frame.rows() / 2), new Scalar(96, 96, 96, 255), 3);
+        Imgproc.line(large, new Point(0, frame.rows() * 3 / 4),
+                new Point(frame.cols(), frame.rows() / 3), new Scalar(255, 128, 96, 255), 2);
+        large.copyTo(frame);
+        small.release();
+        large.release();
+    }
+}
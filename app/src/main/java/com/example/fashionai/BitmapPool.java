@@ -0,0 +1,50 @@
+package com.example.fashionai;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thread-safe pool of same-sized ARGB_8888 Bitmap sets. A worker fills a set
+ * taken with {@link #acquire()} and hands it to the UI thread, which owns it
+ * until it has replaced it on screen and gives it back with {@link #release}.
+ * A set is therefore never written while an ImageView may still draw it.
+ */
+public class BitmapPool {
+
+    private final int width, height, setSize;
+    private final ArrayDeque<List<Bitmap>> freeSets = new ArrayDeque<>();
+    private int allocationCount;
+
+    public BitmapPool(int width, int height, int setSize) {
+        this.width = width;
+        this.height = height;
+        this.setSize = setSize;
+    }
+
+    /** Takes a free set, creating one when all sets are in use. */
+    public List<Bitmap> acquire() {
+        synchronized (this) {
+            List<Bitmap> bitmaps = freeSets.poll();
+            if (bitmaps != null) return bitmaps;
+            allocationCount += setSize;
+        }
+        List<Bitmap> bitmaps = new ArrayList<>(setSize);
+        for (int i = 0; i < setSize; i++) {
+            bitmaps.add(Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888));
+        }
+        return bitmaps;
+    }
+
+    /** Returns a set that is no longer displayed or was never delivered. */
+    public synchronized void release(List<Bitmap> bitmaps) {
+        if (bitmaps != null) freeSets.push(bitmaps);
+    }
+
+    /** Number of Bitmaps created so far; stays constant once enough sets circulate. */
+    public synchronized int getAllocationCount() {
+        return allocationCount;
+    }
+}
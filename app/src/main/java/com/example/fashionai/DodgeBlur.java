@@ -0,0 +1,81 @@
+package com.example.fashionai;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * The 21x21 blur used by the color-dodge step of the sketch effect, with
+ * cheaper approximations that trade accuracy for latency on large inputs.
+ * Scratch Mats are kept between calls; an instance is not thread-safe.
+ */
+public class DodgeBlur {
+
+    public enum Mode {
+        /** Exact 21x21 Gaussian, sigma derived from the kernel size (3.5). */
+        GAUSSIAN,
+        /** Three 7x7 box passes, which approximate a Gaussian of sigma ~3.5. */
+        BOX,
+        /** Gaussian of half the sigma on a half-size image, scaled back up. */
+        DOWNSAMPLED
+    }
+
+    private static final Size GAUSSIAN_SIZE = new Size(21, 21);
+    private static final Size BOX_SIZE = new Size(7, 7);
+    private static final Size DOWNSAMPLED_GAUSSIAN_SIZE = new Size(11, 11);
+    private static final double DOWNSAMPLED_SIGMA = 1.75;
+
+    private Mode mode = Mode.GAUSSIAN;
+    private final Mat scratchMat = new Mat(), smallMat = new Mat(), smallBlurredMat = new Mat(), exactMat = new Mat();
+    private final Size srcSize = new Size(), smallSize = new Size();
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public void apply(Mat src, Mat dst) {
+        switch (mode) {
+            case GAUSSIAN:
+                Imgproc.GaussianBlur(src, dst, GAUSSIAN_SIZE, 0);
+                break;
+
+            case BOX:
+                Imgproc.blur(src, dst, BOX_SIZE);
+                Imgproc.blur(dst, scratchMat, BOX_SIZE);
+                Imgproc.blur(scratchMat, dst, BOX_SIZE);
+                break;
+
+            case DOWNSAMPLED:
+                srcSize.width = src.cols();
+                srcSize.height = src.rows();
+                smallSize.width = (src.cols() + 1) / 2;
+                smallSize.height = (src.rows() + 1) / 2;
+                Imgproc.resize(src, smallMat, smallSize, 0, 0, Imgproc.INTER_AREA);
+                Imgproc.GaussianBlur(smallMat, smallBlurredMat, DOWNSAMPLED_GAUSSIAN_SIZE, DOWNSAMPLED_SIGMA);
+                Imgproc.resize(smallBlurredMat, dst, srcSize, 0, 0, Imgproc.INTER_LINEAR);
+                break;
+        }
+    }
+
+    /**
+     * Blurs {@code src} into {@code dst} and returns the PSNR in dB of the
+     * result against the exact Gaussian. Higher is closer.
+     */
+    public double measureQuality(Mat src, Mat dst) {
+        apply(src, dst);
+        Imgproc.GaussianBlur(src, exactMat, GAUSSIAN_SIZE, 0);
+        return Core.PSNR(dst, exactMat);
+    }
+
+    public void release() {
+        scratchMat.release();
+        smallMat.release();
+        smallBlurredMat.release();
+        exactMat.release();
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.fashionai;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+
+import org.opencv.core.Mat;
+import org.tensorflow.lite.Interpreter;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * Runs the sketch-to-garment model over a batch of sketches in a single
+ * {@link Interpreter#run} call. The interpreter input is resized to the batch
+ * size on demand and the tensors are kept for following calls of the same size.
+ */
+public class GarmentModel {
+
+    private final Interpreter interpreter;
+    private final int imageSize;
+    private ImageTensor inputTensor, outputTensor;
+
+    public GarmentModel(Interpreter interpreter, int imageSize) {
+        this.interpreter = interpreter;
+        this.imageSize = imageSize;
+    }
+
+    /** Memory-maps a model stored uncompressed in the app assets. */
+    public static ByteBuffer loadModelFile(Context context, String fileName) throws IOException {
+        AssetFileDescriptor fileDescriptor = context.getAssets().openFd(fileName);
+        FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
+        FileChannel fileChannel = inputStream.getChannel();
+        long startOffset = fileDescriptor.getStartOffset();
+        long declaredLength = fileDescriptor.getDeclaredLength();
+        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+    }
+
+    /** Loads a batch of 8-bit Mats of the model input size for the next {@link #run()}. */
+    public void setInputs(List<Mat> inputMats) {
+        ensureBatchSize(inputMats.size());
+        for (int i = 0; i < inputMats.size(); i++) {
+            inputTensor.putMat(i, inputMats.get(i));
+        }
+    }
+
+    /**
+     * Runs the batch loaded by {@link #setInputs(List)} and denormalizes it into
+     * {@code outputBitmaps}, one Bitmap of the image size per batch entry.
+     */
+    public List<Bitmap> runInto(List<Bitmap> outputBitmaps) {
+        interpreter.run(inputTensor.getBuffer(), outputTensor.getBuffer());
+
+        for (int i = 0; i < inputTensor.getBatchSize(); i++) {
+            outputTensor.getBitmap(i, outputBitmaps.get(i));
+        }
+        return outputBitmaps;
+    }
+
+    private void ensureBatchSize(int batchSize) {
+        if (inputTensor != null && inputTensor.getBatchSize() == batchSize) return;
+
+        interpreter.resizeInput(0, new int[]{batchSize, imageSize, imageSize, 3});
+        interpreter.allocateTensors();
+        if (inputTensor != null) {
+            inputTensor.release();
+            outputTensor.release();
+        }
+        inputTensor = new ImageTensor(batchSize, imageSize);
+        outputTensor = new ImageTensor(batchSize, imageSize);
+    }
+
+    public void close() {
+        interpreter.close();
+        if (inputTensor != null) {
+            inputTensor.release();
+            outputTensor.release();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.fashionai;
+
+import android.graphics.Bitmap;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Pre-allocated direct buffer holding a [batch, size, size, 3] float tensor
+ * normalized to [-1, 1]. The same instance is reused for every inference so
+ * no tensor-sized Java arrays are created per call. The buffer is the data of
+ * a Mat, so OpenCV and the interpreter work on the same memory.
+ */
+public class ImageTensor {
+
+    private static final int CHANNELS = 3;
+    private static final float SCALE = 127.5f;
+
+    private final int batchSize, imageSize;
+    // the whole batch as (batch * size) x size CV_32FC3, over a direct buffer
+    private final Mat tensorMat;
+    private final ByteBuffer buffer;
+    private final FloatBuffer floatBuffer;
+    private final int[] pixels;
+    private final int slotLength;
+    private final Mat[] slotMats;
+    private Mat rgbMat;
+
+    public ImageTensor(int batchSize, int imageSize) {
+        this.batchSize = batchSize;
+        this.imageSize = imageSize;
+        tensorMat = Mat.allocateDirect(batchSize * imageSize, imageSize, CvType.CV_32FC3);
+        buffer = tensorMat.asByteBuffer();
+        floatBuffer = buffer.asFloatBuffer();
+        slotMats = new Mat[batchSize];
+        pixels = new int[imageSize * imageSize];
+        slotLength = imageSize * imageSize * CHANNELS;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getImageSize() {
+        return imageSize;
+    }
+
+    /** Returns the backing buffer rewound for {@code Interpreter.run}. */
+    public ByteBuffer getBuffer() {
+        buffer.rewind();
+        return buffer;
+    }
+
+    /**
+     * Normalizes an 8-bit gray, RGB or RGBA {@code mat} into batch slot {@code index}.
+     * The conversion is done by OpenCV straight into a float Mat sharing the
+     * slot's memory, so no pixel passes through the Java heap.
+     *
+     * @throws IllegalArgumentException if {@code mat} is not size x size, or not
+     *         CV_8UC1, CV_8UC3 or CV_8UC4; OpenCV would otherwise give the slot
+     *         new memory and the tensor would silently keep its old contents
+     */
+    public void putMat(int index, Mat mat) {
+        int type = mat.type();
+        if (mat.rows() != imageSize || mat.cols() != imageSize
+                || (type != CvType.CV_8UC1 && type != CvType.CV_8UC3 && type != CvType.CV_8UC4)) {
+            throw new IllegalArgumentException("Expected a " + imageSize + "x" + imageSize
+                    + " CV_8UC1, CV_8UC3 or CV_8UC4 Mat, got " + mat.rows() + "x" + mat.cols()
+                    + " " + CvType.typeToString(type));
+        }
+        Mat rgb = mat;
+        if (type == CvType.CV_8UC1) {
+            rgb = getRgbMat();
+            Imgproc.cvtColor(mat, rgb, Imgproc.COLOR_GRAY2RGB);
+        } else if (type == CvType.CV_8UC4) {
+            rgb = getRgbMat();
+            Imgproc.cvtColor(mat, rgb, Imgproc.COLOR_RGBA2RGB);
+        }
+        rgb.convertTo(getMat(index), CvType.CV_32FC3, 1 / SCALE, -1);
+    }
+
+    /**
+     * Returns batch slot {@code index} as a size x size CV_32FC3 Mat over the
+     * tensor memory: OpenCV reads and writes the tensor in place through it,
+     * and its {@code asFloatBuffer()} is a view of what the interpreter sees.
+     */
+    public Mat getMat(int index) {
+        if (slotMats[index] == null) {
+            slotMats[index] = tensorMat.rowRange(index * imageSize, (index + 1) * imageSize);
+        }
+        return slotMats[index];
+    }
+
+    private Mat getRgbMat() {
+        if (rgbMat == null) rgbMat = new Mat(imageSize, imageSize, CvType.CV_8UC3);
+        return rgbMat;
+    }
+
+    /** Denormalizes batch slot {@code index} into {@code bitmap}, which must be size x size. */
+    public Bitmap getBitmap(int index, Bitmap bitmap) {
+        for (int i = 0, j = index * slotLength; i < pixels.length; i++) {
+            int r = toChannel(floatBuffer.get(j++));
+            int g = toChannel(floatBuffer.get(j++));
+            int b = toChannel(floatBuffer.get(j++));
+            pixels[i] = 0xFF << 24 | r << 16 | g << 8 | b;
+        }
+        bitmap.setPixels(pixels, 0, imageSize, 0, 0, imageSize, imageSize);
+        return bitmap;
+    }
+
+    // the model output is not bounded; out-of-range values must not spill into the next channel
+    private static int toChannel(float value) {
+        int c = (int) (value * SCALE + SCALE);
+        return c < 0 ? 0 : (c > 255 ? 255 : c);
+    }
+
+    /** Releases the Mats; the buffer stays valid for as long as it is referenced. */
+    public void release() {
+        for (int i = 0; i < slotMats.length; i++) {
+            if (slotMats[i] != null) {
+                slotMats[i].release();
+                slotMats[i] = null;
+            }
+        }
+        if (rgbMat != null) {
+            rgbMat.release();
+            rgbMat = null;
+        }
+        tensorMat.release();
+    }
+}
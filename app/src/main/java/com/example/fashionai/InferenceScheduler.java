@@ -0,0 +1,110 @@
+package com.example.fashionai;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs jobs on a bounded pool of worker threads with a latest-request-wins
+ * policy: submitting a job cancels every job submitted before it, and only
+ * the result of the newest job is handed to its callback.
+ *
+ * Callbacks are delivered through the supplied executor, which is the UI
+ * thread on Android. This class has no Android dependencies.
+ */
+public class InferenceScheduler {
+
+    public interface Job<T> {
+        /** Runs on a worker thread. Long jobs should poll {@link Request#isCancelled()}. */
+        T run(Request request) throws Exception;
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+        void onError(Exception e);
+    }
+
+    public final class Request {
+        private final long id;
+
+        private Request(long id) {
+            this.id = id;
+        }
+
+        public boolean isCancelled() {
+            return id != latestRequestId.get() || workers.isShutdown();
+        }
+    }
+
+    private final ThreadPoolExecutor workers;
+    private final Executor callbackExecutor;
+    private final AtomicLong latestRequestId = new AtomicLong();
+
+    public InferenceScheduler(int workerCount, int queueCapacity, Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new WorkerThreadFactory(),
+                new ThreadPoolExecutor.DiscardOldestPolicy());
+    }
+
+    public <T> Request submit(final Job<T> job, final Callback<T> callback) {
+        final Request request = new Request(latestRequestId.incrementAndGet());
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (request.isCancelled()) return;
+                try {
+                    deliverResult(request, callback, job.run(request));
+                } catch (Exception e) {
+                    deliverError(request, callback, e);
+                }
+            }
+        });
+        return request;
+    }
+
+    /** Cancels every submitted job without submitting a new one. */
+    public void cancelAll() {
+        latestRequestId.incrementAndGet();
+    }
+
+    public void shutdown() {
+        cancelAll();
+        workers.shutdownNow();
+    }
+
+    private <T> void deliverResult(final Request request, final Callback<T> callback, final T result) {
+        if (request.isCancelled()) return;
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!request.isCancelled()) callback.onResult(result);
+            }
+        });
+    }
+
+    private <T> void deliverError(final Request request, final Callback<T> callback, final Exception e) {
+        if (request.isCancelled()) return;
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!request.isCancelled()) callback.onError(e);
+            }
+        });
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "inference-worker-" + threadCount.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
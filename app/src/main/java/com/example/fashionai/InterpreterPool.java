@@ -0,0 +1,65 @@
+package com.example.fashionai;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Fixed set of {@link GarmentModel}s sharing one memory-mapped model file.
+ * An interpreter is not thread-safe, so each caller checks a model out with
+ * {@link #acquire()} and hands it back with {@link #release(GarmentModel)};
+ * callers on different threads then run in parallel on different cores.
+ */
+public class InterpreterPool {
+
+    private final List<GarmentModel> models;
+    private final BlockingQueue<GarmentModel> idleModels;
+
+    /**
+     * @param model memory-mapped model, shared by every interpreter in the pool
+     * @param poolSize number of interpreters
+     * @param threadsPerInterpreter CPU threads each interpreter may use
+     * @param useXnnpack whether to run float ops through the XNNPACK delegate
+     */
+    public InterpreterPool(ByteBuffer model, int imageSize, int poolSize, int threadsPerInterpreter, boolean useXnnpack) {
+        models = new ArrayList<>(poolSize);
+        idleModels = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            Interpreter.Options options = new Interpreter.Options()
+                    .setNumThreads(threadsPerInterpreter)
+                    .setUseXNNPACK(useXnnpack);
+            GarmentModel garmentModel = new GarmentModel(new Interpreter(model, options), imageSize);
+            models.add(garmentModel);
+            idleModels.add(garmentModel);
+        }
+    }
+
+    /** Splits the available cores evenly between {@code poolSize} interpreters. */
+    public static InterpreterPool create(ByteBuffer model, int imageSize, int poolSize) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return new InterpreterPool(model, imageSize, poolSize, Math.max(1, cores / poolSize), true);
+    }
+
+    public int size() {
+        return models.size();
+    }
+
+    /** Blocks until an interpreter is free. */
+    public GarmentModel acquire() throws InterruptedException {
+        return idleModels.take();
+    }
+
+    public void release(GarmentModel garmentModel) {
+        idleModels.add(garmentModel);
+    }
+
+    public void close() {
+        for (GarmentModel garmentModel : models) {
+            garmentModel.close();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.fashionai;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.Manifest;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.WindowManager;
+import android.widget.ImageView;
+
+import org.opencv.android.AdaptiveResolutionController;
+import org.opencv.android.BaseLoaderCallback;
+import org.opencv.android.CameraBridgeViewBase;
+import org.opencv.android.FrameMetrics;
+import org.opencv.android.LoaderCallbackInterface;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Live pencil-sketch preview of the camera with the generated garment drawn
+ * over it. The sketch is computed on every frame on the camera thread; the
+ * model runs in the background on the newest frame available when it becomes
+ * free, and frames arriving while it is busy are dropped.
+ */
+public class LiveSketchActivity extends AppCompatActivity implements CameraBridgeViewBase.CvCameraViewListener2 {
+
+    private static final String TAG = "LiveSketchActivity";
+    private final int INPUT_IMAGE_SIZE = 256,
+            PERMISSION_REQUEST_CODE = 3;
+    private final String MODEL_FILE_NAME = "model_256.tflite";
+    private final double TARGET_FPS = 24;
+    private final Size modelInputSize = new Size(INPUT_IMAGE_SIZE, INPUT_IMAGE_SIZE);
+
+    CameraBridgeViewBase cameraView;
+    ImageView imageViewOutput;
+    InterpreterPool interpreterPool;
+    InferenceScheduler inferenceScheduler;
+    // one blur and one set of scratch Mats per scale step, so that switching scales
+    // doesn't make OpenCV reallocate them
+    DodgeBlur[] dodgeBlurs;
+    Mat[] blurredMats, scaledSketchMats;
+    Mat sketchMat, modelInputMat, scaledGrayMat;
+    Size frameSize;
+    // empty, so that resize() takes the output size from the scale factors
+    final Size scaleBySize = new Size();
+    final BitmapPool bitmapPool = new BitmapPool(INPUT_IMAGE_SIZE, INPUT_IMAGE_SIZE, 1);
+    // owned by the UI thread until the next result replaces it on screen
+    private List<Bitmap> displayedBitmaps;
+    AdaptiveResolutionController resolutionController;
+    final AtomicBoolean inferenceBusy = new AtomicBoolean();
+    // guards the hand-over of modelInputMat between a running inference and onCameraViewStopped
+    final Object inferenceLock = new Object();
+    volatile boolean cameraRunning;
+    FrameMetrics frameMetrics;
+    boolean openCvLoaded;
+
+    private BaseLoaderCallback mLoaderCallback = new BaseLoaderCallback(this) {
+        @Override
+        public void onManagerConnected(int status) {
+            switch (status) {
+                case LoaderCallbackInterface.SUCCESS:
+                {
+                    openCvLoaded = true;
+                    startCamera();
+                } break;
+                default:
+                {
+                    super.onManagerConnected(status);
+                } break;
+            }
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+        setContentView(R.layout.activity_live_sketch);
+
+        cameraView = (CameraBridgeViewBase) findViewById(R.id.cameraView);
+        cameraView.setCvCameraViewListener(this);
+        cameraView.enablePipeline();
+        frameMetrics = cameraView.getFrameMetrics();
+        // the sketch is computed on a downscaled frame when the device can't keep up
+        resolutionController = new AdaptiveResolutionController(AdaptiveResolutionController.MODE_DOWNSCALE, TARGET_FPS);
+        // only resets the controller on camera restarts; onCameraFrame feeds it
+        cameraView.setAdaptiveResolutionController(resolutionController);
+        imageViewOutput = (ImageView) findViewById(R.id.imageViewOutput);
+
+        try {
+            interpreterPool = InterpreterPool.create(GarmentModel.loadModelFile(this, MODEL_FILE_NAME), INPUT_IMAGE_SIZE, 1);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to load " + MODEL_FILE_NAME, e);
+        }
+
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        inferenceScheduler = new InferenceScheduler(1, 1, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                mainHandler.post(runnable);
+            }
+        });
+
+        if (checkSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            requestPermissions(new String[]{Manifest.permission.CAMERA}, PERMISSION_REQUEST_CODE);
+        }
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode == PERMISSION_REQUEST_CODE) startCamera();
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        if (!OpenCVLoader.initDebug()) {
+            OpenCVLoader.initAsync(OpenCVLoader.OPENCV_VERSION_3_0_0, this, mLoaderCallback);
+        } else {
+            mLoaderCallback.onManagerConnected(LoaderCallbackInterface.SUCCESS);
+        }
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        cameraView.disableView();
+    }
+
+    @Override
+    protected void onDestroy() {
+        cameraView.disableView();
+        inferenceScheduler.shutdown();
+        if (interpreterPool != null) interpreterPool.close();
+        super.onDestroy();
+    }
+
+    private void startCamera() {
+        if (openCvLoaded && checkSelfPermission(Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED) {
+            cameraView.enableView();
+        }
+    }
+
+    @Override
+    public void onCameraViewStarted(int width, int height) {
+        int levels = resolutionController.getLevelCount();
+        dodgeBlurs = new DodgeBlur[levels];
+        blurredMats = new Mat[levels];
+        scaledSketchMats = new Mat[levels];
+        for (int i = 0; i < levels; i++) {
+            dodgeBlurs[i] = new DodgeBlur();
+            dodgeBlurs[i].setMode(DodgeBlur.Mode.DOWNSAMPLED);
+            blurredMats[i] = new Mat();
+            scaledSketchMats[i] = new Mat();
+        }
+        sketchMat = new Mat(height, width, CvType.CV_8UC1);
+        scaledGrayMat = new Mat();
+        frameSize = new Size(width, height);
+        synchronized (inferenceLock) {
+            modelInputMat = new Mat(INPUT_IMAGE_SIZE, INPUT_IMAGE_SIZE, CvType.CV_8UC1);
+        }
+        cameraRunning = true;
+    }
+
+    @Override
+    public void onCameraViewStopped() {
+        cameraRunning = false;
+        if (BuildConfig.DEBUG) Log.i(TAG, frameMetrics.toString());
+        for (int i = 0; i < dodgeBlurs.length; i++) {
+            dodgeBlurs[i].release();
+            blurredMats[i].release();
+            scaledSketchMats[i].release();
+        }
+        sketchMat.release();
+        scaledGrayMat.release();
+        synchronized (inferenceLock) {
+            // A running inference still reads modelInputMat; it releases the Mat when done.
+            if (!inferenceBusy.get()) modelInputMat.release();
+            modelInputMat = null;
+        }
+    }
+
+    @Override
+    public Mat onCameraFrame(CameraBridgeViewBase.CvCameraViewFrame inputFrame) {
+        int level = resolutionController.getLevel();
+        double scale = resolutionController.getScale();
+        long start = System.nanoTime();
+        Mat gray;
+        if (scale >= 1) {
+            gray = inputFrame.gray();
+        } else if (inputFrame instanceof CameraBridgeViewBase.CvCameraViewFrame2) {
+            // cached per frame by the camera views of this SDK
+            gray = ((CameraBridgeViewBase.CvCameraViewFrame2) inputFrame).gray(scale);
+        } else {
+            Imgproc.resize(inputFrame.gray(), scaledGrayMat, scaleBySize, scale, scale, Imgproc.INTER_AREA);
+            gray = scaledGrayMat;
+        }
+        Mat sketch = scale < 1 ? scaledSketchMats[level] : sketchMat;
+        SketchPipeline.dodge(gray, dodgeBlurs[level], blurredMats[level], sketch);
+        // Only the scaled work is reported: the upscale below costs the same at every scale.
+        resolutionController.onFrameProcessed(System.nanoTime() - start);
+        if (scale < 1)
+            Imgproc.resize(sketch, sketchMat, frameSize, 0, 0, Imgproc.INTER_LINEAR);
+
+        if (interpreterPool != null) {
+            if (inferenceBusy.compareAndSet(false, true)) {
+                Imgproc.resize(sketch, modelInputMat, modelInputSize, 0, 0, Imgproc.INTER_AREA);
+                submitInference(modelInputMat);
+            } else {
+                frameMetrics.recordDropped(FrameMetrics.DROP_INFERENCE);
+            }
+        }
+        return sketchMat;
+    }
+
+    private void submitInference(final Mat inputMat) {
+        inferenceScheduler.submit(new InferenceScheduler.Job<List<Bitmap>>() {
+            @Override
+            public List<Bitmap> run(InferenceScheduler.Request request) throws InterruptedException {
+                try {
+                    // Not cancelled on stop, so that this job always gets to hand inputMat back.
+                    if (!cameraRunning) return null;
+                    GarmentModel garmentModel = interpreterPool.acquire();
+                    List<Bitmap> outputBitmaps = bitmapPool.acquire();
+                    boolean handedOver = false;
+                    long start = System.nanoTime();
+                    try {
+                        garmentModel.setInputs(Collections.singletonList(inputMat));
+                        garmentModel.runInto(outputBitmaps);
+                        handedOver = true;
+                        return outputBitmaps;
+                    } finally {
+                        frameMetrics.record(FrameMetrics.INFERENCE, System.nanoTime() - start);
+                        interpreterPool.release(garmentModel);
+                        if (!handedOver) bitmapPool.release(outputBitmaps);
+                    }
+                } finally {
+                    synchronized (inferenceLock) {
+                        inferenceBusy.set(false);
+                        // the camera stopped, and possibly restarted, while this job ran
+                        if (inputMat != modelInputMat) inputMat.release();
+                    }
+                }
+            }
+        }, new InferenceScheduler.Callback<List<Bitmap>>() {
+            @Override
+            public void onResult(List<Bitmap> result) {
+                if (result == null) return;
+                imageViewOutput.setImageBitmap(result.get(0));
+                // The previous Bitmap is off screen now and may be refilled by the worker.
+                // A result cancelled after its job returned is simply left to the GC.
+                bitmapPool.release(displayedBitmaps);
+                displayedBitmaps = result;
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Inference failed", e);
+            }
+        });
+    }
+}
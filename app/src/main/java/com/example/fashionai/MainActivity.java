@@ -6,12 +6,12 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import android.Manifest;
 import android.content.Intent;
-import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.MediaStore;
 import android.view.View;
 import android.widget.Button;
@@ -20,48 +20,53 @@ import android.widget.ImageView;
 import org.opencv.android.BaseLoaderCallback;
 import org.opencv.android.LoaderCallbackInterface;
 import org.opencv.android.OpenCVLoader;
-import org.opencv.android.Utils;
-import org.opencv.core.Core;
-import org.opencv.core.CvType;
-import org.opencv.core.Mat;
-import org.opencv.core.Scalar;
-import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
-import org.tensorflow.lite.Interpreter;
-
-import java.io.File;
-import java.io.FileInputStream;
+
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
 
 public class MainActivity extends AppCompatActivity {
 
+    private static class SketchResult {
+        final List<Bitmap> inputBitmaps, outputBitmaps;
+
+        SketchResult(List<Bitmap> inputBitmaps, List<Bitmap> outputBitmaps) {
+            this.inputBitmaps = inputBitmaps;
+            this.outputBitmaps = outputBitmaps;
+        }
+    }
+
     private final int INPUT_IMAGE_SIZE = 256,
             PHOTO_FROM_CAMERA_REQUEST_CODE = 0,
             PHOTO_FROM_GALLERY_REQUEST_CODE = 1,
             PERMISSION_REQUEST_CODE = 2,
-            IMAGE_VIEW_COUNT = 4;
+            IMAGE_VIEW_COUNT = 4,
+            INTERPRETER_POOL_SIZE = 2;
     private final String MODEL_FILE_NAME = "model_256.tflite";
     ImageView[] imageViewOutputs, imageViewInputs;
-    Interpreter tfLite;
-    Mat sourceMat, grayMat, invertColorMatrix, invertedGrayMat, blurredMat, invertedBlurredMat, pencilSketchMat, pencilSketchRGBMat;
+    InterpreterPool interpreterPool;
+    InferenceScheduler inferenceScheduler;
+    // filled once OpenCV is loaded; until then jobs wait in take() on a worker thread
+    final BlockingQueue<SketchPipeline> sketchPipelines = new ArrayBlockingQueue<>(INTERPRETER_POOL_SIZE);
+    private boolean sketchPipelinesCreated;
+    // guarded by sketchPipelines; set once the pipelines have been released
+    private boolean destroyed;
+    final BitmapPool bitmapPool = new BitmapPool(INPUT_IMAGE_SIZE, INPUT_IMAGE_SIZE, IMAGE_VIEW_COUNT);
+    // owned by the UI thread until the next result replaces it on screen
+    private SketchResult displayedResult;
     private BaseLoaderCallback mLoaderCallback = new BaseLoaderCallback(this) {
         @Override
         public void onManagerConnected(int status) {
             switch (status) {
                 case LoaderCallbackInterface.SUCCESS:
                 {
-                    sourceMat = new Mat();
-                    grayMat = new Mat();
-                    invertedGrayMat = new Mat(INPUT_IMAGE_SIZE, INPUT_IMAGE_SIZE, CvType.CV_8UC1);
-                    blurredMat = new Mat();
-                    invertedBlurredMat = new Mat(INPUT_IMAGE_SIZE, INPUT_IMAGE_SIZE, CvType.CV_8UC1);
-                    pencilSketchMat = new Mat(INPUT_IMAGE_SIZE, INPUT_IMAGE_SIZE, CvType.CV_8UC1);
-                    pencilSketchRGBMat = new Mat();
-                    invertColorMatrix = new Mat(INPUT_IMAGE_SIZE, INPUT_IMAGE_SIZE, CvType.CV_8UC1, new Scalar(255,255,255));
+                    if (sketchPipelinesCreated) break;
+                    sketchPipelinesCreated = true;
+                    for (int i = 0; i < INTERPRETER_POOL_SIZE; i++) {
+                        sketchPipelines.add(new SketchPipeline(INPUT_IMAGE_SIZE));
+                    }
                 } break;
                 default:
                 {
@@ -78,6 +83,7 @@ public class MainActivity extends AppCompatActivity {
 
         Button btnCamera = (Button) findViewById(R.id.btnCamera);
         Button btnGallery = (Button) findViewById(R.id.btnGallery);
+        Button btnLive = (Button) findViewById(R.id.btnLive);
 
         imageViewInputs = new ImageView[IMAGE_VIEW_COUNT];
         imageViewInputs[0] = (ImageView) findViewById(R.id.imageViewInput0);
@@ -91,7 +97,7 @@ public class MainActivity extends AppCompatActivity {
         imageViewOutputs[3] = (ImageView) findViewById(R.id.imageViewOutput3);
 
         try {
-            tfLite = new Interpreter(loadModelFile());
+            interpreterPool = InterpreterPool.create(GarmentModel.loadModelFile(this, MODEL_FILE_NAME), INPUT_IMAGE_SIZE, INTERPRETER_POOL_SIZE);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -112,16 +118,47 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        btnLive.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                startActivity(new Intent(MainActivity.this, LiveSketchActivity.class));
+            }
+        });
+
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        inferenceScheduler = new InferenceScheduler(INTERPRETER_POOL_SIZE, 2, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                mainHandler.post(runnable);
+            }
+        });
+
         requestPermissions(new String[]{Manifest.permission.READ_EXTERNAL_STORAGE}, PERMISSION_REQUEST_CODE);
     }
 
-    private ByteBuffer loadModelFile() throws IOException {
-        AssetFileDescriptor fileDescriptor = this.getAssets().openFd(MODEL_FILE_NAME);
-        FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
-        FileChannel fileChannel = inputStream.getChannel();
-        long startOffset = fileDescriptor.getStartOffset();
-        long declaredLength = fileDescriptor.getDeclaredLength();
-        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+    @Override
+    protected void onDestroy() {
+        inferenceScheduler.shutdown();
+        if (interpreterPool != null) interpreterPool.close();
+        synchronized (sketchPipelines) {
+            destroyed = true;
+            SketchPipeline sketchPipeline;
+            while ((sketchPipeline = sketchPipelines.poll()) != null) {
+                sketchPipeline.release();
+            }
+        }
+        super.onDestroy();
+    }
+
+    /** Hands a pipeline back, or releases it if a job still held it when the activity was destroyed. */
+    private void recyclePipeline(SketchPipeline sketchPipeline) {
+        synchronized (sketchPipelines) {
+            if (destroyed) {
+                sketchPipeline.release();
+            } else {
+                sketchPipelines.add(sketchPipeline);
+            }
+        }
     }
 
     @Override
@@ -139,6 +176,7 @@ public class MainActivity extends AppCompatActivity {
         super.onActivityResult(requestCode, resultCode, data);
 
         Bitmap inputBitmap = null;
+        String picturePath = null;
 
         switch (requestCode){
             case PHOTO_FROM_CAMERA_REQUEST_CODE:
@@ -160,9 +198,7 @@ public class MainActivity extends AppCompatActivity {
                 cursor.moveToFirst();
 
                 int columnIndex = cursor.getColumnIndex(filePathColumn[0]);
-                String picturePath = cursor.getString(columnIndex);
-                File pictureFile = new File(picturePath);
-                inputBitmap = BitmapFactory.decodeFile(pictureFile.getAbsolutePath());
+                picturePath = cursor.getString(columnIndex);
                 cursor.close();
                 break;
 
@@ -170,16 +206,62 @@ public class MainActivity extends AppCompatActivity {
                 return;
         }
 
-        try{
-            List<Bitmap> inputBitMaps = getSketchBitmaps(inputBitmap);
-            for(int i=0; i<IMAGE_VIEW_COUNT; i++) {
-                imageViewInputs[i].setImageBitmap(inputBitMaps.get(i));
-                Bitmap outputBitmap = doInterference(inputBitMaps.get(i));
-                imageViewOutputs[i].setImageBitmap(outputBitmap);
+        processImage(inputBitmap, picturePath);
+    }
+
+    private void processImage(final Bitmap bitmap, final String picturePath) {
+        inferenceScheduler.submit(new InferenceScheduler.Job<SketchResult>() {
+            @Override
+            public SketchResult run(InferenceScheduler.Request request) throws InterruptedException, IOException {
+                Bitmap inputBitmap = bitmap;
+                if (inputBitmap == null) {
+                    inputBitmap = SampledBitmapDecoder.decode(picturePath, INPUT_IMAGE_SIZE);
+                    if (inputBitmap == null) throw new IOException("Unable to decode " + picturePath);
+                }
+                SketchPipeline sketchPipeline = sketchPipelines.take();
+                GarmentModel garmentModel = interpreterPool.acquire();
+                List<Bitmap> inputBitmaps = bitmapPool.acquire();
+                List<Bitmap> outputBitmaps = bitmapPool.acquire();
+                boolean handedOver = false;
+                try {
+                    sketchPipeline.process(inputBitmap);
+                    sketchPipeline.getBitmaps(inputBitmaps);
+                    garmentModel.setInputs(sketchPipeline.getMats());
+                    if (request.isCancelled()) return null;
+                    garmentModel.runInto(outputBitmaps);
+                    if (request.isCancelled()) return null;
+                    handedOver = true;
+                    return new SketchResult(inputBitmaps, outputBitmaps);
+                } finally {
+                    interpreterPool.release(garmentModel);
+                    recyclePipeline(sketchPipeline);
+                    if (!handedOver) {
+                        bitmapPool.release(inputBitmaps);
+                        bitmapPool.release(outputBitmaps);
+                    }
+                }
             }
-        }catch (Exception e){
-            showAlert(e.getMessage());
-        }
+        }, new InferenceScheduler.Callback<SketchResult>() {
+            @Override
+            public void onResult(SketchResult result) {
+                for(int i=0; i<IMAGE_VIEW_COUNT; i++) {
+                    imageViewInputs[i].setImageBitmap(result.inputBitmaps.get(i));
+                    imageViewOutputs[i].setImageBitmap(result.outputBitmaps.get(i));
+                }
+                // The previous set is off screen now and may be refilled by a worker.
+                // A result cancelled after its job returned is simply left to the GC.
+                if (displayedResult != null) {
+                    bitmapPool.release(displayedResult.inputBitmaps);
+                    bitmapPool.release(displayedResult.outputBitmaps);
+                }
+                displayedResult = result;
+            }
+
+            @Override
+            public void onError(Exception e) {
+                showAlert(e.getMessage());
+            }
+        });
     }
 
     private void showAlert(String msg) {
@@ -189,71 +271,4 @@ public class MainActivity extends AppCompatActivity {
                 .setIcon(android.R.drawable.ic_dialog_alert)
                 .show();
     }
-
-    private Bitmap doInterference(Bitmap inputBitmap) {
-        float[][][][] inputArray = bitmapToFloatArray(inputBitmap);
-        float[][][][] outputArray = new float[1][INPUT_IMAGE_SIZE][INPUT_IMAGE_SIZE][3];
-        tfLite.run(inputArray, outputArray);
-        return floatArrayToBitmap(outputArray);
-    }
-
-    private List<Bitmap> getSketchBitmaps(Bitmap bitmap) {
-        Bitmap bitmapScaled = Bitmap.createScaledBitmap(bitmap, INPUT_IMAGE_SIZE, INPUT_IMAGE_SIZE, true);
-        Utils.bitmapToMat(bitmapScaled, sourceMat);
-
-        Imgproc.cvtColor(sourceMat, grayMat, Imgproc.COLOR_RGB2GRAY);
-        Core.subtract(invertColorMatrix, grayMat, invertedGrayMat);
-        Imgproc.GaussianBlur(invertedGrayMat, blurredMat, new Size(21, 21), 0);
-        Core.subtract(invertColorMatrix, blurredMat, invertedBlurredMat);
-        Core.divide(grayMat, invertedBlurredMat, pencilSketchMat, 256.0);
-
-        Imgproc.cvtColor(pencilSketchMat, pencilSketchRGBMat, Imgproc.COLOR_GRAY2RGB);
-
-        List<Bitmap> sketchedBitmaps = new ArrayList<>();
-        sketchedBitmaps.add(matToBitmap(sourceMat));
-        sketchedBitmaps.add(matToBitmap(invertedBlurredMat));
-        sketchedBitmaps.add(matToBitmap(pencilSketchMat));
-        sketchedBitmaps.add(matToBitmap(pencilSketchRGBMat));
-        return sketchedBitmaps;
-    }
-
-    private Bitmap matToBitmap(Mat mat){
-        Bitmap bitmap = Bitmap.createBitmap(mat.cols(), mat.rows(), Bitmap.Config.ARGB_8888);
-        Utils.matToBitmap(mat, bitmap);
-        return bitmap;
-    }
-
-    private float[][][][] bitmapToFloatArray(Bitmap bitmap) {
-        int[] pixels = new int[INPUT_IMAGE_SIZE * INPUT_IMAGE_SIZE];
-        bitmap.getPixels(pixels, 0, INPUT_IMAGE_SIZE, 0, 0, INPUT_IMAGE_SIZE, INPUT_IMAGE_SIZE);
-
-        float[][][][] arr = new float[1][INPUT_IMAGE_SIZE][INPUT_IMAGE_SIZE][3];
-        for (int i=0; i<INPUT_IMAGE_SIZE; i++) {
-            for(int j=0; j<INPUT_IMAGE_SIZE; j++){
-                final int val = pixels[(i*INPUT_IMAGE_SIZE)+j];
-
-                arr[0][i][j][0] = ((((val>> 16) & 0xFF)-127.5f)/127.5f);
-                arr[0][i][j][1] = ((((val>> 8) & 0xFF)-127.5f)/127.5f);
-                arr[0][i][j][2] = (((val & 0xFF)-127.5f)/127.5f);
-            }
-        }
-
-        return arr;
-    }
-
-    private Bitmap floatArrayToBitmap(float[][][][] arr) {
-        Bitmap bitmap = Bitmap.createBitmap(INPUT_IMAGE_SIZE , INPUT_IMAGE_SIZE, Bitmap.Config.ARGB_8888);
-        int[] pixels = new int[INPUT_IMAGE_SIZE * INPUT_IMAGE_SIZE];
-        for (int i=0; i<INPUT_IMAGE_SIZE; i++) {
-            for(int j=0; j<INPUT_IMAGE_SIZE; j++){
-                int a = 0xFF;
-                float r = (arr[0][i][j][0]*127.5f)+127.5f;
-                float g = (arr[0][i][j][1]*127.5f)+127.5f;
-                float b = (arr[0][i][j][2]*127.5f)+127.5f;
-                pixels[(i*INPUT_IMAGE_SIZE)+j] = a << 24 | (int)r << 16 | (int)g << 8 | (int)b;
-            }
-        }
-        bitmap.setPixels(pixels, 0, INPUT_IMAGE_SIZE, 0, 0, INPUT_IMAGE_SIZE, INPUT_IMAGE_SIZE);
-        return bitmap;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package com.example.fashionai;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * Decodes image files directly near the size they are needed at, so a large
+ * gallery photo is never fully decoded only to be scaled down afterwards.
+ */
+public class SampledBitmapDecoder {
+
+    private SampledBitmapDecoder() {
+    }
+
+    /**
+     * Decodes {@code path} with the largest power-of-two subsampling that keeps
+     * both sides at least {@code minSize} pixels. Returns null if the file can't
+     * be decoded.
+     */
+    public static Bitmap decode(String path, int minSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, minSize);
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        return BitmapFactory.decodeFile(path, options);
+    }
+
+    static int calculateInSampleSize(int width, int height, int minSize) {
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= minSize && height / (inSampleSize * 2) >= minSize) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.fashionai;
+
+import android.graphics.Bitmap;
+
+import org.opencv.android.SketchPreprocessor;
+import org.opencv.android.Utils;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pencil-sketch effect producing the four model inputs: the source image,
+ * the blurred gray image, the sketch and the sketch as RGB.
+ *
+ * All intermediate Mats are allocated once and reused, so a steady stream of
+ * same-sized inputs causes no native allocation. Output Bitmaps are supplied
+ * by the caller, usually from a {@link BitmapPool}, because they may still be
+ * on screen after the pipeline has moved on. A pipeline is not thread-safe.
+ */
+public class SketchPipeline {
+
+    public static final int OUTPUT_COUNT = 4;
+
+    private final int imageSize;
+    private final Size outputSize;
+    private final Mat inputMat, sourceMat, grayMat, blurredGrayMat, pencilSketchMat, pencilSketchRGBMat;
+    private final List<Mat> outputMats;
+    private final DodgeBlur dodgeBlur = new DodgeBlur();
+
+    public SketchPipeline(int imageSize) {
+        this.imageSize = imageSize;
+        outputSize = new Size(imageSize, imageSize);
+        inputMat = new Mat();
+        sourceMat = new Mat(imageSize, imageSize, CvType.CV_8UC4);
+        grayMat = new Mat(imageSize, imageSize, CvType.CV_8UC1);
+        blurredGrayMat = new Mat(imageSize, imageSize, CvType.CV_8UC1);
+        pencilSketchMat = new Mat(imageSize, imageSize, CvType.CV_8UC1);
+        pencilSketchRGBMat = new Mat(imageSize, imageSize, CvType.CV_8UC3);
+        outputMats = Arrays.asList(sourceMat, blurredGrayMat, pencilSketchMat, pencilSketchRGBMat);
+    }
+
+    public void setBlurMode(DodgeBlur.Mode mode) {
+        dodgeBlur.setMode(mode);
+    }
+
+    /**
+     * PSNR in dB of the current blur mode against the exact Gaussian, measured
+     * on the input of the last {@link #process} call.
+     */
+    public double measureBlurQuality() {
+        return dodgeBlur.measureQuality(grayMat, blurredGrayMat);
+    }
+
+    /** Runs the sketch effect on an RGBA bitmap of any size. */
+    public void process(Bitmap bitmap) {
+        Utils.bitmapToMat(bitmap, inputMat);
+        process(inputMat);
+    }
+
+    /** Runs the sketch effect on an RGBA Mat of any size. */
+    public void process(Mat rgbaMat) {
+        if (rgbaMat.rows() == imageSize && rgbaMat.cols() == imageSize) {
+            rgbaMat.copyTo(sourceMat);
+        } else {
+            Imgproc.resize(rgbaMat, sourceMat, outputSize, 0, 0, Imgproc.INTER_AREA);
+        }
+
+        Imgproc.cvtColor(sourceMat, grayMat, Imgproc.COLOR_RGBA2GRAY);
+        dodge(grayMat, pencilSketchMat);
+
+        Imgproc.cvtColor(pencilSketchMat, pencilSketchRGBMat, Imgproc.COLOR_GRAY2RGB);
+    }
+
+    private void dodge(Mat gray, Mat dst) {
+        dodge(gray, dodgeBlur, blurredGrayMat, dst);
+    }
+
+    /**
+     * Blurs the gray image with {@code dodgeBlur} and color-dodges it with the
+     * blur, see {@link SketchPreprocessor#dodge}.
+     *
+     * @param blurred scratch Mat receiving blur(gray), reused between calls
+     */
+    public static void dodge(Mat gray, DodgeBlur dodgeBlur, Mat blurred, Mat dst) {
+        dodgeBlur.apply(gray, blurred);
+        SketchPreprocessor.dodge(gray, blurred, dst);
+    }
+
+    /** Outputs of the last {@link #process} call, in display order. */
+    public List<Mat> getMats() {
+        return outputMats;
+    }
+
+    /**
+     * Copies the outputs of the last {@link #process} call into {@code bitmaps},
+     * {@link #OUTPUT_COUNT} Bitmaps of the pipeline's image size.
+     */
+    public List<Bitmap> getBitmaps(List<Bitmap> bitmaps) {
+        for (int i = 0; i < OUTPUT_COUNT; i++) {
+            Utils.matToBitmap(outputMats.get(i), bitmaps.get(i));
+        }
+        return bitmaps;
+    }
+
+    public void release() {
+        dodgeBlur.release();
+        inputMat.release();
+        grayMat.release();
+        for (Mat mat : outputMats) {
+            mat.release();
+        }
+    }
+}
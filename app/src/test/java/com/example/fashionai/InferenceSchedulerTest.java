@@ -0,0 +1,195 @@
+package com.example.fashionai;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link InferenceScheduler}, using a direct executor in
+ * place of the UI thread.
+ */
+public class InferenceSchedulerTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private InferenceScheduler scheduler;
+    private List<String> results;
+    private CountDownLatch delivered;
+
+    @Before
+    public void setUp() {
+        scheduler = new InferenceScheduler(2, 4, DIRECT_EXECUTOR);
+        results = Collections.synchronizedList(new ArrayList<String>());
+        delivered = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void submit_deliversResult() throws Exception {
+        scheduler.submit(constantJob("a"), recordingCallback());
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("a"), results);
+    }
+
+    @Test
+    public void submit_latestRequestWins() throws Exception {
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirst = new CountDownLatch(1);
+        final InferenceScheduler.Request first = scheduler.submit(new InferenceScheduler.Job<String>() {
+            @Override
+            public String run(InferenceScheduler.Request request) throws Exception {
+                firstStarted.countDown();
+                releaseFirst.await();
+                return "first";
+            }
+        }, recordingCallback());
+
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        scheduler.submit(constantJob("second"), recordingCallback());
+        assertTrue(first.isCancelled());
+        releaseFirst.countDown();
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("second"), results);
+    }
+
+    @Test
+    public void cancelAll_dropsPendingResult() throws Exception {
+        QueueingExecutor callbacks = new QueueingExecutor();
+        InferenceScheduler serialScheduler = new InferenceScheduler(1, 4, callbacks);
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch returned = new CountDownLatch(1);
+            final Thread[] worker = new Thread[1];
+            InferenceScheduler.Request request = serialScheduler.submit(new InferenceScheduler.Job<String>() {
+                @Override
+                public String run(InferenceScheduler.Request request) throws Exception {
+                    worker[0] = Thread.currentThread();
+                    started.countDown();
+                    try {
+                        release.await();
+                        return "dropped";
+                    } finally {
+                        returned.countDown();
+                    }
+                }
+            }, recordingCallback());
+
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertFalse(request.isCancelled());
+            serialScheduler.cancelAll();
+            assertTrue(request.isCancelled());
+            release.countDown();
+
+            // Once the job has returned, the worker parks on the empty queue only after
+            // it has had its chance to enqueue a callback.
+            assertTrue(returned.await(5, TimeUnit.SECONDS));
+            assertTrue(awaitIdle(worker[0], 5, TimeUnit.SECONDS));
+            assertEquals(0, callbacks.drain());
+            assertTrue(results.isEmpty());
+        } finally {
+            serialScheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void submit_deliversError() throws Exception {
+        final List<Exception> errors = new ArrayList<>();
+        scheduler.submit(new InferenceScheduler.Job<String>() {
+            @Override
+            public String run(InferenceScheduler.Request request) {
+                throw new IllegalStateException("boom");
+            }
+        }, new InferenceScheduler.Callback<String>() {
+            @Override
+            public void onResult(String result) {
+                fail("unexpected result " + result);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                errors.add(e);
+                delivered.countDown();
+            }
+        });
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals("boom", errors.get(0).getMessage());
+    }
+
+    /** Callback executor whose tasks only run when the test drains it. */
+    private static class QueueingExecutor implements Executor {
+        private final List<Runnable> queued = new ArrayList<>();
+
+        @Override
+        public synchronized void execute(Runnable runnable) {
+            queued.add(runnable);
+        }
+
+        /** Runs the queued tasks on the calling thread and returns how many there were. */
+        int drain() {
+            List<Runnable> tasks;
+            synchronized (this) {
+                tasks = new ArrayList<>(queued);
+                queued.clear();
+            }
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            return tasks.size();
+        }
+    }
+
+    private static boolean awaitIdle(Thread worker, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (worker.getState() != Thread.State.WAITING) {
+            if (System.nanoTime() > deadline) return false;
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    private static InferenceScheduler.Job<String> constantJob(final String value) {
+        return new InferenceScheduler.Job<String>() {
+            @Override
+            public String run(InferenceScheduler.Request request) {
+                return value;
+            }
+        };
+    }
+
+    private InferenceScheduler.Callback<String> recordingCallback() {
+        return new InferenceScheduler.Callback<String>() {
+            @Override
+            public void onResult(String result) {
+                results.add(result);
+                delivered.countDown();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                fail(e.getMessage());
+            }
+        };
+    }
+}
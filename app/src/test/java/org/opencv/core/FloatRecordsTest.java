@@ -0,0 +1,188 @@
+package org.opencv.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link FloatRecords}. It lives in org.opencv.core to reach the
+ * package-private class; sort and retain only touch the float array, so no native code
+ * is loaded.
+ */
+public class FloatRecordsTest {
+
+    private static final int STRIDE = 4;
+    private static final int KEY = 2;
+
+    // record i holds i in every field but the key, so that torn records can be detected
+    private static float[] records(float... keys) {
+        float[] data = new float[keys.length * STRIDE];
+        for (int i = 0; i < keys.length; i++) {
+            Arrays.fill(data, i * STRIDE, (i + 1) * STRIDE, i);
+            data[i * STRIDE + KEY] = keys[i];
+        }
+        return data;
+    }
+
+    private static float[] keys(float[] data, int count) {
+        float[] keys = new float[count];
+        for (int i = 0; i < count; i++)
+            keys[i] = data[i * STRIDE + KEY];
+        return keys;
+    }
+
+    private static int[] ids(float[] data, int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++)
+            ids[i] = (int) data[i * STRIDE];
+        return ids;
+    }
+
+    // every record is whole, and each original record appears exactly once
+    private static void assertPermutationOf(float[] original, float[] data, int count) {
+        boolean[] seen = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            int id = (int) data[i * STRIDE];
+            for (int f = 0; f < STRIDE; f++) {
+                if (f != KEY)
+                    assertEquals("record " + i + " field " + f, id, data[i * STRIDE + f], 0);
+            }
+            assertFalse("record " + id + " appears twice", seen[id]);
+            seen[id] = true;
+            assertEquals(original[id * STRIDE + KEY], data[i * STRIDE + KEY], 0);
+        }
+    }
+
+    private static void assertSorted(float[] data, int count, boolean descending) {
+        for (int i = 1; i < count; i++) {
+            float a = data[(i - 1) * STRIDE + KEY];
+            float b = data[i * STRIDE + KEY];
+            assertTrue("records " + (i - 1) + " and " + i + " out of order: " + a + ", " + b,
+                    descending ? a >= b : a <= b);
+        }
+    }
+
+    @Test
+    public void sort_smallArraysUseInsertionSort() {
+        float[] data = records(3, 1, 2, 5, 4);
+        FloatRecords.sort(data, 5, STRIDE, KEY, false, new float[STRIDE]);
+        assertArrayEquals(new float[]{1, 2, 3, 4, 5}, keys(data, 5), 0);
+        assertArrayEquals(new int[]{1, 2, 0, 4, 3}, ids(data, 5));
+    }
+
+    @Test
+    public void sort_descending() {
+        float[] data = records(3, 1, 2, 5, 4);
+        FloatRecords.sort(data, 5, STRIDE, KEY, true, new float[STRIDE]);
+        assertArrayEquals(new float[]{5, 4, 3, 2, 1}, keys(data, 5), 0);
+    }
+
+    @Test
+    public void sort_emptyAndSingle() {
+        float[] data = records(7);
+        FloatRecords.sort(data, 0, STRIDE, KEY, false, new float[STRIDE]);
+        FloatRecords.sort(data, 1, STRIDE, KEY, false, new float[STRIDE]);
+        assertArrayEquals(records(7), data, 0);
+    }
+
+    @Test
+    public void sort_randomSizesAroundThreshold() {
+        Random random = new Random(42);
+        int[] counts = {2, 15, 16, 17, 31, 33, 100, 1000, 4097};
+        for (int count : counts) {
+            for (int pass = 0; pass < 2; pass++) {
+                boolean descending = pass == 1;
+                float[] keys = new float[count];
+                for (int i = 0; i < count; i++)
+                    keys[i] = random.nextFloat() * 100 - 50;
+                float[] original = records(keys);
+                float[] data = original.clone();
+                FloatRecords.sort(data, count, STRIDE, KEY, descending, new float[STRIDE]);
+                assertSorted(data, count, descending);
+                assertPermutationOf(original, data, count);
+            }
+        }
+    }
+
+    @Test
+    public void sort_manyEqualKeys() {
+        Random random = new Random(7);
+        float[] keys = new float[500];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = random.nextInt(3);
+        float[] original = records(keys);
+        float[] data = original.clone();
+        FloatRecords.sort(data, keys.length, STRIDE, KEY, false, new float[STRIDE]);
+        assertSorted(data, keys.length, false);
+        assertPermutationOf(original, data, keys.length);
+    }
+
+    @Test
+    public void sort_alreadySortedAndReversed() {
+        float[] ascending = new float[1000];
+        float[] descending = new float[1000];
+        for (int i = 0; i < 1000; i++) {
+            ascending[i] = i;
+            descending[i] = 1000 - i;
+        }
+        float[] data = records(ascending);
+        FloatRecords.sort(data, 1000, STRIDE, KEY, false, new float[STRIDE]);
+        assertArrayEquals(ascending, keys(data, 1000), 0);
+
+        float[] original = records(descending);
+        data = original.clone();
+        FloatRecords.sort(data, 1000, STRIDE, KEY, false, new float[STRIDE]);
+        assertSorted(data, 1000, false);
+        assertPermutationOf(original, data, 1000);
+    }
+
+    @Test
+    public void sort_leavesRecordsPastCountAlone() {
+        float[] data = records(4, 3, 2, 1, 0);
+        FloatRecords.sort(data, 3, STRIDE, KEY, false, new float[STRIDE]);
+        assertArrayEquals(new float[]{2, 3, 4, 1, 0}, keys(data, 5), 0);
+    }
+
+    @Test
+    public void retain_keepsMatchingRecordsInOrder() {
+        float[] data = records(5, -1, 3, 10, 4, 0);
+        int kept = FloatRecords.retain(data, 6, STRIDE, KEY, 0, 5);
+        assertEquals(4, kept);
+        assertArrayEquals(new float[]{5, 3, 4, 0}, keys(data, kept), 0);
+        assertArrayEquals(new int[]{0, 2, 4, 5}, ids(data, kept));
+    }
+
+    @Test
+    public void retain_boundsAreInclusive() {
+        float[] data = records(1, 2, 3);
+        assertEquals(3, FloatRecords.retain(data, 3, STRIDE, KEY, 1, 3));
+        assertEquals(1, FloatRecords.retain(data, 3, STRIDE, KEY, 2, 2));
+        assertArrayEquals(new int[]{1}, ids(data, 1));
+    }
+
+    @Test
+    public void retain_noneAndOpenBounds() {
+        float[] data = records(1, 2, 3);
+        assertEquals(3, FloatRecords.retain(data, 3, STRIDE, KEY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY));
+        assertEquals(0, FloatRecords.retain(data, 3, STRIDE, KEY, 4, Float.POSITIVE_INFINITY));
+        assertEquals(0, FloatRecords.retain(data, 0, STRIDE, KEY, 0, 0));
+    }
+
+    @Test
+    public void retain_onlyLooksAtFirstCountRecords() {
+        float[] data = records(1, 2, 3, 4);
+        assertEquals(2, FloatRecords.retain(data, 2, STRIDE, KEY, 0, 10));
+    }
+
+    @Test
+    public void ensureCapacity_keepsStrideMultiple() {
+        float[] data = new float[STRIDE * 2];
+        assertSame(data, FloatRecords.ensureCapacity(data, 2, STRIDE));
+        float[] grown = FloatRecords.ensureCapacity(data, 3, STRIDE);
+        assertTrue(grown.length >= 3 * STRIDE);
+        assertEquals(0, grown.length % STRIDE);
+    }
+}
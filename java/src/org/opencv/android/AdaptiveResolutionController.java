@@ -0,0 +1,139 @@
+package org.opencv.android;
+
+import android.util.Log;
+
+/**
+ * Chooses a resolution scale from the measured per-frame processing time so that the
+ * processing keeps up with a target frame rate. The time of every frame is averaged over
+ * a window of frames; the scale steps down when a window exceeds the frame budget and
+ * steps up only when the larger scale is predicted to fit comfortably, for several
+ * windows in a row. The first window after a change is ignored while it settles.
+ *
+ * With MODE_DOWNSCALE the listener reads getScale(), processes a smaller image, e.g. with
+ * CvCameraViewFrame2.gray(scale), and reports the time of that scaled work only: costs that
+ * do not shrink with the scale, such as upscaling the result for display, would break the
+ * prediction that the time follows the pixel count. With MODE_PREVIEW_SIZE
+ * CameraBridgeViewBase feeds it with the listener and display conversion time and restarts
+ * the camera with a preview size limited to the scaled initial size.
+ */
+public class AdaptiveResolutionController {
+
+    private static final String TAG = "AdaptiveResolution";
+
+    public static final int MODE_DOWNSCALE     = 0;
+    public static final int MODE_PREVIEW_SIZE  = 1;
+
+    private static final double[] DEFAULT_SCALES = { 1.0, 0.75, 0.5, 0.375, 0.25 };
+    private static final int    WINDOW_FRAMES   = 30;
+    /** A window above this share of the frame budget steps down. */
+    private static final double HIGH_WATER      = 0.9;
+    /** The next scale up must be predicted below this share of the budget. */
+    private static final double LOW_WATER       = 0.7;
+    private static final int    DOWN_WINDOWS    = 1;
+    private static final int    UP_WINDOWS      = 3;
+
+    private final int mMode;
+    private final double[] mScales;
+    private final long mBudgetNanos;
+
+    private volatile int mLevel;
+    private int mFrames;
+    private long mWindowNanos;
+    private int mOverWindows;
+    private int mUnderWindows;
+    private boolean mSettling;
+
+    public AdaptiveResolutionController(int mode, double targetFps) {
+        this(mode, targetFps, DEFAULT_SCALES);
+    }
+
+    /**
+     * @param mode - MODE_DOWNSCALE or MODE_PREVIEW_SIZE
+     * @param targetFps - the frame rate processing should sustain
+     * @param scales - the scales to choose from, largest first
+     */
+    public AdaptiveResolutionController(int mode, double targetFps, double[] scales) {
+        mMode = mode;
+        mScales = scales.clone();
+        mBudgetNanos = (long) (1e9 / targetFps);
+    }
+
+    public int getMode() {
+        return mMode;
+    }
+
+    /**
+     * Returns the current scale, relative to the full resolution.
+     */
+    public double getScale() {
+        return mScales[mLevel];
+    }
+
+    /**
+     * Returns the index of the current scale, 0 being the largest; e.g. to keep one set of
+     * buffers per scale.
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+
+    public int getLevelCount() {
+        return mScales.length;
+    }
+
+    /**
+     * Forgets the current window, e.g. after the camera has been restarted.
+     */
+    public synchronized void resetWindow() {
+        mFrames = 0;
+        mWindowNanos = 0;
+        mOverWindows = mUnderWindows = 0;
+        mSettling = true;
+    }
+
+    /**
+     * Records the processing time of one frame.
+     * @return true if the scale has changed
+     */
+    public synchronized boolean onFrameProcessed(long nanos) {
+        mWindowNanos += nanos;
+        if (++mFrames < WINDOW_FRAMES)
+            return false;
+
+        double average = (double) mWindowNanos / mFrames;
+        mFrames = 0;
+        mWindowNanos = 0;
+        if (mSettling) {
+            mSettling = false;
+            return false;
+        }
+
+        if (average > mBudgetNanos * HIGH_WATER) {
+            mUnderWindows = 0;
+            if (++mOverWindows >= DOWN_WINDOWS && mLevel < mScales.length - 1)
+                return setLevel(mLevel + 1, average);
+        } else {
+            mOverWindows = 0;
+            if (mLevel > 0) {
+                // the cost grows with the pixel count
+                double ratio = mScales[mLevel - 1] / mScales[mLevel];
+                if (average * ratio * ratio < mBudgetNanos * LOW_WATER) {
+                    if (++mUnderWindows >= UP_WINDOWS)
+                        return setLevel(mLevel - 1, average);
+                } else {
+                    mUnderWindows = 0;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean setLevel(int level, double average) {
+        Log.i(TAG, "Average frame time " + (long) (average / 1e6) + " ms of " + mBudgetNanos / 1000000
+                + " ms, scale " + mScales[mLevel] + " -> " + mScales[level]);
+        mLevel = level;
+        mOverWindows = mUnderWindows = 0;
+        mSettling = true;
+        return true;
+    }
+}
@@ -0,0 +1,292 @@
+package org.opencv.android;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Base class for camera frames that convert lazily and remember the result.
+ * Each conversion runs at most once per frame generation; the camera view
+ * calls nextGeneration() whenever the frame holds a new image, so a listener
+ * may call rgba(), bgr() or gray(double) as often as it likes.
+ *
+ * A region of interest set with setRoi() limits rgbaRoi() and grayRoi() to that part of
+ * the frame; with an interleaved chroma plane only the region is converted to RGBA.
+ * The views of the planes over the region are kept until the region or the plane Mats
+ * change, so a frame whose planes stay the same allocates nothing per image.
+ *
+ * The RGBA Mat is backed by a direct buffer, so {@code rgba().asByteBuffer()} hands the
+ * converted pixels to Java or TFLite code without a copy.
+ */
+public abstract class CachedCameraViewFrame
+        implements CameraBridgeViewBase.CvCameraViewFrame2, CameraBridgeViewBase.CvCameraViewRoiFrame {
+
+    protected final int mWidth;
+    protected final int mHeight;
+
+    private final Mat mRgba;
+    private final Mat mBgr = new Mat();
+    private final Mat mScaledGray = new Mat();
+    private final Size mScaledSize = new Size();
+    private double mScale;
+
+    private long mGeneration;
+    private long mRgbaGeneration = -1;
+    private long mBgrGeneration = -1;
+    private long mScaledGrayGeneration = -1;
+
+    private final Rect mRequestedRoi = new Rect();
+    private final Rect mRoi = new Rect();
+    private boolean mHasRoi;
+    private final Mat mRgbaRoi = new Mat();
+    // view of mRgba over the region, kept until the region changes
+    private Mat mRgbaRoiView;
+    private Mat mRgbaRoiResult;
+    // views of the gray and chroma planes over the region, and the planes they were made of
+    private Mat mGrayRoiView;
+    private Mat mGrayRoiPlane;
+    private Mat mChromaRoiView;
+    private Mat mChromaRoiPlane;
+    // returned for an empty region
+    private final Mat mEmpty = new Mat();
+    private long mRgbaRoiGeneration = -1;
+
+    protected CachedCameraViewFrame(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mRgba = Mat.allocateDirect(height, width, CvType.CV_8UC4);
+        mRoi.width = width;
+        mRoi.height = height;
+    }
+
+    /**
+     * Invalidates the cached conversions. Must be called each time the frame data changes.
+     */
+    protected void nextGeneration() {
+        mGeneration++;
+    }
+
+    /**
+     * Releases the views of the region over the gray and chroma planes. Must be called
+     * before the memory of the planes is given back, as the views point into it.
+     */
+    protected void releasePlaneViews() {
+        if (mGrayRoiView != null) {
+            mGrayRoiView.release();
+            mGrayRoiView = null;
+            mGrayRoiPlane = null;
+        }
+        if (mChromaRoiView != null) {
+            mChromaRoiView.release();
+            mChromaRoiView = null;
+            mChromaRoiPlane = null;
+        }
+    }
+
+    /**
+     * Returns the single channel gray scale plane of the current image without conversion.
+     */
+    protected abstract Mat grayPlane();
+
+    protected abstract void convertToRgba(Mat dst);
+
+    protected abstract void convertToBgr(Mat dst);
+
+    /**
+     * Returns the interleaved VU plane of the current image as a (height/2 x width/2) CV_8UC2
+     * Mat, or null if the frame has none; only then can a region be converted on its own.
+     */
+    protected Mat chromaPlane() {
+        return null;
+    }
+
+    /**
+     * Sets the region of interest, or the whole frame for null. The region is clipped to the
+     * frame and widened to even coordinates, as chroma is subsampled by two.
+     */
+    public void setRoi(Rect roi) {
+        if (roi == null) {
+            if (mHasRoi) {
+                mHasRoi = false;
+                mRoi.x = mRoi.y = 0;
+                mRoi.width = mWidth;
+                mRoi.height = mHeight;
+                invalidateRoi();
+            }
+            return;
+        }
+        if (mHasRoi && roi.equals(mRequestedRoi))
+            return;
+        mRequestedRoi.x = roi.x;
+        mRequestedRoi.y = roi.y;
+        mRequestedRoi.width = roi.width;
+        mRequestedRoi.height = roi.height;
+
+        int x0 = Math.max(0, roi.x) & ~1;
+        int y0 = Math.max(0, roi.y) & ~1;
+        int x1 = Math.min(mWidth, (roi.x + roi.width + 1) & ~1);
+        int y1 = Math.min(mHeight, (roi.y + roi.height + 1) & ~1);
+        mRoi.x = Math.min(x0, mWidth);
+        mRoi.y = Math.min(y0, mHeight);
+        mRoi.width = Math.max(0, x1 - mRoi.x);
+        mRoi.height = Math.max(0, y1 - mRoi.y);
+        mHasRoi = true;
+        invalidateRoi();
+    }
+
+    private void invalidateRoi() {
+        mRgbaRoiGeneration = -1;
+        if (mRgbaRoiView != null) {
+            mRgbaRoiView.release();
+            mRgbaRoiView = null;
+        }
+        releasePlaneViews();
+    }
+
+    private Mat grayRoiView() {
+        Mat plane = grayPlane();
+        if (mGrayRoiPlane != plane) {
+            if (mGrayRoiView != null)
+                mGrayRoiView.release();
+            mGrayRoiView = plane.submat(mRoi);
+            mGrayRoiPlane = plane;
+        }
+        return mGrayRoiView;
+    }
+
+    private Mat chromaRoiView(Mat plane) {
+        if (mChromaRoiPlane != plane) {
+            if (mChromaRoiView != null)
+                mChromaRoiView.release();
+            mChromaRoiView = plane.submat(mRoi.y / 2, (mRoi.y + mRoi.height) / 2, mRoi.x / 2, (mRoi.x + mRoi.width) / 2);
+            mChromaRoiPlane = plane;
+        }
+        return mChromaRoiView;
+    }
+
+    private boolean isRoiEmpty() {
+        return mRoi.width == 0 || mRoi.height == 0;
+    }
+
+    @Override
+    public Mat gray() {
+        return grayPlane();
+    }
+
+    @Override
+    public Mat rgba() {
+        if (mRgbaGeneration != mGeneration) {
+            convertToRgba(mRgba);
+            mRgbaGeneration = mGeneration;
+        }
+        return mRgba;
+    }
+
+    @Override
+    public Mat bgr() {
+        if (mBgrGeneration != mGeneration) {
+            convertToBgr(mBgr);
+            mBgrGeneration = mGeneration;
+        }
+        return mBgr;
+    }
+
+    @Override
+    public Mat gray(double scale) {
+        if (mScaledGrayGeneration != mGeneration || mScale != scale) {
+            mScale = scale;
+            mScaledSize.width = Math.max(1, Math.round(mWidth * scale));
+            mScaledSize.height = Math.max(1, Math.round(mHeight * scale));
+            Imgproc.resize(grayPlane(), mScaledGray, mScaledSize, 0, 0, Imgproc.INTER_AREA);
+            mScaledGrayGeneration = mGeneration;
+        }
+        return mScaledGray;
+    }
+
+    @Override
+    public Rect roi() {
+        return mRoi;
+    }
+
+    @Override
+    public Mat rgbaRoi() {
+        if (!mHasRoi)
+            return rgba();
+        if (mRgbaRoiGeneration != mGeneration) {
+            Mat chroma = chromaPlane();
+            if (isRoiEmpty()) {
+                mRgbaRoiResult = mEmpty;
+            } else if (mRgbaGeneration == mGeneration || chroma == null) {
+                // mRgba keeps its buffer, so the view stays valid across frames
+                Mat rgba = rgba();
+                if (mRgbaRoiView == null)
+                    mRgbaRoiView = rgba.submat(mRoi);
+                mRgbaRoiResult = mRgbaRoiView;
+            } else {
+                Imgproc.cvtColorTwoPlane(grayRoiView(), chromaRoiView(chroma), mRgbaRoi, Imgproc.COLOR_YUV2RGBA_NV21);
+                mRgbaRoiResult = mRgbaRoi;
+            }
+            mRgbaRoiGeneration = mGeneration;
+        }
+        return mRgbaRoiResult;
+    }
+
+    @Override
+    public Mat grayRoi() {
+        if (!mHasRoi)
+            return grayPlane();
+        if (isRoiEmpty())
+            return mEmpty;
+        return grayRoiView();
+    }
+
+    @Override
+    public void composite(Mat roiResult, Mat dst) {
+        if (!mHasRoi) {
+            copyConverted(roiResult, dst);
+            return;
+        }
+        Mat target = dst.submat(mRoi);
+        copyConverted(roiResult, target);
+        target.release();
+    }
+
+    // copies src into dst, converting between gray and RGBA if the channel counts differ
+    private static void copyConverted(Mat src, Mat dst) {
+        if (src.channels() == dst.channels())
+            src.copyTo(dst);
+        else if (src.channels() == 1)
+            Imgproc.cvtColor(src, dst, Imgproc.COLOR_GRAY2RGBA, 4);
+        else
+            Imgproc.cvtColor(src, dst, Imgproc.COLOR_RGBA2GRAY);
+    }
+
+    // converts through the cache, so that a later rgba() or bgr() does not convert again
+    @Override
+    public void rgba(Mat dst) {
+        rgba().copyTo(dst);
+    }
+
+    @Override
+    public void bgr(Mat dst) {
+        bgr().copyTo(dst);
+    }
+
+    @Override
+    public void gray(Mat dst) {
+        grayPlane().copyTo(dst);
+    }
+
+    public void release() {
+        mRgba.release();
+        mBgr.release();
+        mScaledGray.release();
+        mRgbaRoi.release();
+        if (mRgbaRoiView != null)
+            mRgbaRoiView.release();
+        releasePlaneViews();
+        mEmpty.release();
+    }
+}
@@ -1,10 +1,13 @@
 package org.opencv.android;
 
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.opencv.BuildConfig;
 import org.opencv.R;
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
 import org.opencv.core.Size;
 
 import android.app.Activity;
@@ -14,7 +17,8 @@ import android.content.DialogInterface;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Rect;
+import android.graphics.PixelFormat;
+import android.os.Build;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.SurfaceHolder;
@@ -34,8 +38,34 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     private static final int STOPPED = 0;
     private static final int STARTED = 1;
 
+    private static final int RENDER_SLOT_COUNT = 3;
+
     private int mState = STOPPED;
     private Bitmap mCacheBitmap;
+
+    /*
+     * Pipelined output: frames are captured on the camera thread, processed (listener and
+     * Mat to Bitmap) on the subclass worker thread and drawn on mRenderThread, so waiting
+     * for the display never holds up processing. The slots cycle between mFreeSlots, the
+     * worker and mDisplayQueue; when the display falls behind, the worker takes back the
+     * oldest queued slot and that frame is never drawn.
+     */
+    private boolean mPipelineEnabled;
+    private RenderSlot[] mRenderSlots;
+    private final ArrayBlockingQueue<RenderSlot> mFreeSlots = new ArrayBlockingQueue<RenderSlot>(RENDER_SLOT_COUNT);
+    private final ArrayBlockingQueue<RenderSlot> mDisplayQueue = new ArrayBlockingQueue<RenderSlot>(RENDER_SLOT_COUNT);
+    private Thread mRenderThread;
+    private volatile boolean mStopRenderThread;
+
+    private int mOutputMode = OUTPUT_CANVAS;
+    private volatile SurfaceBlitter mBlitter;
+    private final android.graphics.Rect mSrcRect = new android.graphics.Rect();
+    private final android.graphics.Rect mDstRect = new android.graphics.Rect();
+    private volatile Rect mRoi;
+
+    private volatile AdaptiveResolutionController mResolutionController;
+    private int mAdaptiveFullWidth, mAdaptiveFullHeight;
+
     private CvCameraViewListener2 mListener;
     private boolean mSurfaceExist;
     private final Object mSyncObject = new Object();
@@ -49,6 +79,7 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     protected int mCameraIndex = CAMERA_ID_ANY;
     protected boolean mEnabled;
     protected FpsMeter mFpsMeter = null;
+    protected final FrameMetrics mMetrics = new FrameMetrics();
 
     public static final int CAMERA_ID_ANY   = -1;
     public static final int CAMERA_ID_BACK  = 99;
@@ -56,6 +87,13 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     public static final int RGBA = 1;
     public static final int GRAY = 2;
 
+    /** Frames are drawn through a Canvas and scaled in software to the view. */
+    public static final int OUTPUT_CANVAS     = 0;
+    /** The surface has the frame size and the compositor scales it to the view. */
+    public static final int OUTPUT_FIXED_SIZE = 1;
+    /** As OUTPUT_FIXED_SIZE, and frames are copied to the surface without a Bitmap (API 23+). */
+    public static final int OUTPUT_DIRECT     = 2;
+
     public CameraBridgeViewBase(Context context, int cameraId) {
         super(context);
         mCameraIndex = cameraId;
@@ -190,9 +228,71 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         public Mat gray();
     };
 
+    /**
+     * Frame with further conversions, implemented by the frames of JavaCameraView and
+     * JavaCamera2View. Conversions are done at most once per frame and kept; a listener
+     * casts the frame it is given when it needs them.
+     */
+    public interface CvCameraViewFrame2 extends CvCameraViewFrame {
+
+        /**
+         * This method returns BGR Mat with frame, as expected by most OpenCV functions
+         */
+        public Mat bgr();
+
+        /**
+         * This method returns single channel gray scale Mat with frame resized by the given factor
+         * @param scale - resize factor, e.g. 0.5 for half the width and height
+         */
+        public Mat gray(double scale);
+
+        /**
+         * These methods write the frame into a caller supplied Mat, which is reallocated only
+         * if its size or type does not match
+         */
+        public void rgba(Mat dst);
+
+        public void gray(Mat dst);
+
+        public void bgr(Mat dst);
+    };
+
+    /**
+     * Frame that limits processing to the region of interest set with setRoi(), implemented
+     * by the frames of JavaCameraView and JavaCamera2View.
+     */
+    public interface CvCameraViewRoiFrame extends CvCameraViewFrame {
+
+        /**
+         * This method returns the region of interest set on the view, or the whole frame
+         */
+        public Rect roi();
+
+        /**
+         * These methods return the region of interest of the frame; only that part of the
+         * frame is converted when possible
+         */
+        public Mat rgbaRoi();
+
+        public Mat grayRoi();
+
+        /**
+         * This method copies a result computed on the region of interest into the same
+         * region of a full frame Mat, converting between gray and RGBA if needed
+         * @param roiResult - Mat of the size of roi()
+         * @param dst - full frame Mat; outside the region it is left as is
+         */
+        public void composite(Mat roiResult, Mat dst);
+    };
+
     public void surfaceChanged(SurfaceHolder arg0, int arg1, int arg2, int arg3) {
         Log.d(TAG, "call surfaceChanged event");
         synchronized(mSyncObject) {
+            if (mSurfaceExist && mState == STARTED && mOutputMode != OUTPUT_CANVAS
+                    && arg2 == mFrameWidth && arg3 == mFrameHeight) {
+                /* Our own setFixedSize() took effect, the camera keeps its parameters */
+                return;
+            }
             if (!mSurfaceExist) {
                 mSurfaceExist = true;
                 checkCurrentState();
@@ -255,6 +355,107 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             mFpsMeter = null;
     }
 
+    /**
+     * Draws frames on a separate render thread instead of the processing thread. Takes
+     * effect the next time the camera is started.
+     */
+    public void enablePipeline() {
+        mPipelineEnabled = true;
+    }
+
+    public void disablePipeline() {
+        mPipelineEnabled = false;
+    }
+
+    /**
+     * Selects how frames reach the screen, one of the OUTPUT_* modes. OUTPUT_DIRECT falls
+     * back to OUTPUT_FIXED_SIZE below API 23. In the fixed size modes the frame fills the
+     * whole view, so the view should have the aspect ratio of the frame. Should be called
+     * before the view is started for the first time: once a Canvas has been drawn to the
+     * surface, it can't be written to directly.
+     */
+    public void setOutputMode(int mode) {
+        if (mode == OUTPUT_DIRECT && Build.VERSION.SDK_INT < 23)
+            mode = OUTPUT_FIXED_SIZE;
+        mOutputMode = mode;
+        if (mode == OUTPUT_DIRECT)
+            getHolder().setFormat(PixelFormat.RGBA_8888);
+        if (mode == OUTPUT_CANVAS)
+            getHolder().setSizeFromLayout();
+    }
+
+    public int getOutputMode() {
+        return mOutputMode;
+    }
+
+    /**
+     * Sets the region of interest of the following frames, e.g. a detected garment, so the
+     * listener can process just that part with CvCameraViewRoiFrame.rgbaRoi() or grayRoi().
+     * Pass null for the whole frame.
+     */
+    public void setRoi(Rect roi) {
+        mRoi = roi != null ? roi.clone() : null;
+    }
+
+    public Rect getRoi() {
+        Rect roi = mRoi;
+        return roi != null ? roi.clone() : null;
+    }
+
+    /**
+     * Lets the controller adapt the resolution to the processing time of each frame. In
+     * AdaptiveResolutionController.MODE_PREVIEW_SIZE the view feeds it with the listener and
+     * display conversion time and restarts the camera with a smaller or larger preview size
+     * when the scale changes, starting from the size selected on the first start. In
+     * MODE_DOWNSCALE the listener applies getScale() and feeds onFrameProcessed() itself
+     * with the time of its scaled work only; the view just resets the window on restarts.
+     * Pass null to disable.
+     */
+    public void setAdaptiveResolutionController(AdaptiveResolutionController controller) {
+        mResolutionController = controller;
+        mAdaptiveFullWidth = mAdaptiveFullHeight = 0;
+    }
+
+    public AdaptiveResolutionController getAdaptiveResolutionController() {
+        return mResolutionController;
+    }
+
+    private final Runnable mApplyPreviewScale = new Runnable() {
+        @Override
+        public void run() {
+            synchronized(mSyncObject) {
+                AdaptiveResolutionController controller = mResolutionController;
+                if (controller == null || mState != STARTED || mAdaptiveFullWidth == 0)
+                    return;
+                double scale = controller.getScale();
+                mMaxWidth = (int) (mAdaptiveFullWidth * scale);
+                mMaxHeight = (int) (mAdaptiveFullHeight * scale);
+                Log.i(TAG, "Restarting camera with maximum frame size " + mMaxWidth + "x" + mMaxHeight);
+                /* Stop and start again, as for a changed surface */
+                mEnabled = false;
+                checkCurrentState();
+                mEnabled = true;
+                checkCurrentState();
+            }
+        }
+    };
+
+    private void onFrameProcessed(long nanos) {
+        AdaptiveResolutionController controller = mResolutionController;
+        // in MODE_DOWNSCALE the fixed per-frame costs measured here would skew the controller
+        if (controller != null && controller.getMode() == AdaptiveResolutionController.MODE_PREVIEW_SIZE
+                && controller.onFrameProcessed(nanos))
+            post(mApplyPreviewScale);
+    }
+
+    /**
+     * Returns the latency histograms and dropped frame counters of this view. The
+     * application may record its own INFERENCE stage in them.
+     */
+    public FrameMetrics getFrameMetrics() {
+        return mMetrics;
+    }
+
     /**
      *
      * @param listener
@@ -356,6 +557,8 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     // Bitmap must be constructed before surface
     private void onEnterStartedState() {
         Log.d(TAG, "call onEnterStartedState");
+        if (mPipelineEnabled)
+            startRenderThread();
         /* Connect camera */
         if (!connectCamera(getWidth(), getHeight())) {
             AlertDialog ad = new AlertDialog.Builder(getContext()).create();
@@ -369,16 +572,103 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             });
             ad.show();
 
+        } else {
+            if (mOutputMode != OUTPUT_CANVAS) {
+                getHolder().setFixedSize(mFrameWidth, mFrameHeight);
+                if (mOutputMode == OUTPUT_DIRECT)
+                    mBlitter = new SurfaceBlitter(getHolder().getSurface());
+            }
+            AdaptiveResolutionController controller = mResolutionController;
+            if (controller != null) {
+                if (mAdaptiveFullWidth == 0) {
+                    mAdaptiveFullWidth = mFrameWidth;
+                    mAdaptiveFullHeight = mFrameHeight;
+                }
+                controller.resetWindow();
+            }
         }
     }
 
     private void onExitStartedState() {
         disconnectCamera();
+        if (mBlitter != null) {
+            mBlitter.release();
+            mBlitter = null;
+        }
+        stopRenderThread();
         if (mCacheBitmap != null) {
             mCacheBitmap.recycle();
+            mCacheBitmap = null;
+        }
+        if (mRenderSlots != null) {
+            for (RenderSlot slot : mRenderSlots)
+                slot.bitmap.recycle();
+            mRenderSlots = null;
+        }
+    }
+
+    private static class RenderSlot {
+        final Bitmap bitmap;
+        long queuedTime;
+
+        RenderSlot(Bitmap bitmap) {
+            this.bitmap = bitmap;
         }
     }
 
+    private void startRenderThread() {
+        mStopRenderThread = false;
+        mRenderThread = new Thread(new RenderWorker(), "CameraBridgeRender");
+        mRenderThread.start();
+    }
+
+    private void stopRenderThread() {
+        if (mRenderThread == null)
+            return;
+        mStopRenderThread = true;
+        mRenderThread.interrupt();
+        try {
+            mRenderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mRenderThread = null;
+        mFreeSlots.clear();
+        mDisplayQueue.clear();
+    }
+
+    private class RenderWorker implements Runnable {
+        @Override
+        public void run() {
+            while (!mStopRenderThread) {
+                RenderSlot slot;
+                try {
+                    slot = mDisplayQueue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (slot == null)
+                    continue;
+                drawBitmap(slot.bitmap);
+                long drawTime = System.nanoTime() - slot.queuedTime;
+                mMetrics.record(FrameMetrics.DRAW, drawTime);
+                mFreeSlots.offer(slot);
+            }
+            Log.d(TAG, "Finish render thread");
+        }
+    }
+
+    // takes a free slot, or the oldest one still waiting for the display
+    private RenderSlot obtainRenderSlot() {
+        RenderSlot slot = mFreeSlots.poll();
+        if (slot == null) {
+            slot = mDisplayQueue.poll();
+            if (slot != null)
+                mMetrics.recordDropped(FrameMetrics.DROP_DISPLAY);
+        }
+        return slot;
+    }
+
     /**
      * This method shall be called by the subclasses when they have valid
      * object and want it to be delivered to external client (via callback) and
@@ -386,6 +676,21 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
      * @param frame - the current frame to be delivered
      */
     protected void deliverAndDrawFrame(CvCameraViewFrame frame) {
+        deliverAndDrawFrame(frame, System.nanoTime());
+    }
+
+    /**
+     * Same as deliverAndDrawFrame(frame), for subclasses that know when the camera handed
+     * over the frame.
+     * @param frame - the current frame to be delivered
+     * @param captureTime - System.nanoTime() when the frame was received from the camera
+     */
+    protected void deliverAndDrawFrame(CvCameraViewFrame frame, long captureTime) {
+        long listenerStart = System.nanoTime();
+        mMetrics.record(FrameMetrics.CAPTURE, listenerStart - captureTime);
+        if (frame instanceof CachedCameraViewFrame)
+            ((CachedCameraViewFrame) frame).setRoi(mRoi);
+
         Mat modified;
 
         if (mListener != null) {
@@ -393,46 +698,88 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         } else {
             modified = frame.rgba();
         }
+        long bitmapStart = System.nanoTime();
+        mMetrics.record(FrameMetrics.LISTENER, bitmapStart - listenerStart);
+
+        SurfaceBlitter blitter = mBlitter;
+        if (blitter != null) {
+            // until the surface takes the frame size, frames are skipped
+            if (modified != null && !blitter.blit(modified) && BuildConfig.DEBUG)
+                Log.d(TAG, "Surface has not been resized to the frame yet");
+            long blitEnd = System.nanoTime();
+            mMetrics.record(FrameMetrics.BITMAP, blitEnd - bitmapStart);
+            onFrameProcessed(blitEnd - listenerStart);
+            if (mFpsMeter != null)
+                mFpsMeter.measure();
+            return;
+        }
+
+        RenderSlot slot = null;
+        Bitmap bitmap = mCacheBitmap;
+        if (mRenderSlots != null) {
+            // a null Mat keeps the last image on the screen, there is nothing to queue
+            if (modified == null || (slot = obtainRenderSlot()) == null)
+                return;
+            bitmap = slot.bitmap;
+        }
 
         boolean bmpValid = true;
         if (modified != null) {
             try {
-                Utils.matToBitmap(modified, mCacheBitmap);
+                Utils.matToBitmap(modified, bitmap);
             } catch(Exception e) {
                 Log.e(TAG, "Mat type: " + modified);
-                Log.e(TAG, "Bitmap type: " + mCacheBitmap.getWidth() + "*" + mCacheBitmap.getHeight());
+                Log.e(TAG, "Bitmap type: " + bitmap.getWidth() + "*" + bitmap.getHeight());
                 Log.e(TAG, "Utils.matToBitmap() throws an exception: " + e.getMessage());
                 bmpValid = false;
             }
         }
+        long bitmapEnd = System.nanoTime();
+        mMetrics.record(FrameMetrics.BITMAP, bitmapEnd - bitmapStart);
+        onFrameProcessed(bitmapEnd - listenerStart);
+
+        if (slot != null) {
+            if (bmpValid) {
+                slot.queuedTime = bitmapEnd;
+                mDisplayQueue.offer(slot);
+            } else {
+                mFreeSlots.offer(slot);
+            }
+        } else if (bmpValid && bitmap != null) {
+            drawBitmap(bitmap);
+            long drawTime = System.nanoTime() - bitmapEnd;
+            mMetrics.record(FrameMetrics.DRAW, drawTime);
+        }
+    }
 
-        if (bmpValid && mCacheBitmap != null) {
-            Canvas canvas = getHolder().lockCanvas();
-            if (canvas != null) {
-                canvas.drawColor(0, android.graphics.PorterDuff.Mode.CLEAR);
-                if (BuildConfig.DEBUG)
-                    Log.d(TAG, "mStretch value: " + mScale);
-
-                if (mScale != 0) {
-                    canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2),
-                         (int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2 + mScale*mCacheBitmap.getWidth()),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2 + mScale*mCacheBitmap.getHeight())), null);
-                } else {
-                     canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((canvas.getWidth() - mCacheBitmap.getWidth()) / 2,
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2,
-                         (canvas.getWidth() - mCacheBitmap.getWidth()) / 2 + mCacheBitmap.getWidth(),
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2 + mCacheBitmap.getHeight()), null);
-                }
+    private void drawBitmap(Bitmap bitmap) {
+        Canvas canvas = getHolder().lockCanvas();
+        if (canvas != null) {
+            canvas.drawColor(0, android.graphics.PorterDuff.Mode.CLEAR);
+            if (BuildConfig.DEBUG)
+                Log.d(TAG, "mStretch value: " + mScale);
+
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            mSrcRect.set(0, 0, width, height);
+            if (mOutputMode != OUTPUT_CANVAS) {
+                mDstRect.set(0, 0, canvas.getWidth(), canvas.getHeight());
+            } else if (mScale != 0) {
+                int left = (int)((canvas.getWidth() - mScale*width) / 2);
+                int top = (int)((canvas.getHeight() - mScale*height) / 2);
+                mDstRect.set(left, top, (int)(left + mScale*width), (int)(top + mScale*height));
+            } else {
+                int left = (canvas.getWidth() - width) / 2;
+                int top = (canvas.getHeight() - height) / 2;
+                mDstRect.set(left, top, left + width, top + height);
+            }
+            canvas.drawBitmap(bitmap, mSrcRect, mDstRect, null);
 
-                if (mFpsMeter != null) {
-                    mFpsMeter.measure();
-                    mFpsMeter.draw(canvas, 20, 30);
-                }
-                getHolder().unlockCanvasAndPost(canvas);
+            if (mFpsMeter != null) {
+                mFpsMeter.measure();
+                mFpsMeter.draw(canvas, 20, 30);
             }
+            getHolder().unlockCanvasAndPost(canvas);
         }
     }
 
@@ -454,7 +801,15 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     // NOTE: On Android 4.1.x the function must be called before SurfaceTexture constructor!
     protected void AllocateCache()
     {
-        mCacheBitmap = Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888);
+        if (mRenderThread == null) {
+            mCacheBitmap = Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888);
+        } else {
+            mRenderSlots = new RenderSlot[RENDER_SLOT_COUNT];
+            for (int i = 0; i < RENDER_SLOT_COUNT; i++) {
+                mRenderSlots[i] = new RenderSlot(Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888));
+                mFreeSlots.offer(mRenderSlots[i]);
+            }
+        }
     }
 
     public interface ListItemAccessor {
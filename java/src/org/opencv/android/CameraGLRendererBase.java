@@ -8,6 +8,10 @@ import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 import org.opencv.android.CameraGLSurfaceView.CameraTextureListener;
+import org.opencv.android.CameraGLSurfaceView.PreprocessedFrameListener;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
 
 import android.annotation.TargetApi;
 import android.graphics.SurfaceTexture;
@@ -69,6 +73,14 @@ public abstract class CameraGLRendererBase implements GLSurfaceView.Renderer, Su
 
     private FloatBuffer vert, texOES, tex2D;
 
+    private GLSketchPreprocessor mGpuPreprocessor;
+    private boolean mGpuPreprocessorFailed;
+    private int mPreSize = 0;
+    private boolean mPreOnGpu;
+    private ByteBuffer mPreBuffer, mFrameBuffer;
+    private Mat mPreMat, mFrameMat;
+    private SketchPreprocessor mSoftwarePreprocessor;
+
     protected int mCameraWidth = -1, mCameraHeight = -1;
     protected int mFBOWidth = -1, mFBOHeight = -1;
     protected int mMaxCameraWidth = -1, mMaxCameraHeight = -1;
@@ -117,6 +129,7 @@ public abstract class CameraGLRendererBase implements GLSurfaceView.Renderer, Su
             if (mUpdateST) {
                 mSTexture.updateTexImage();
                 mUpdateST = false;
+                preprocessFrame();
             }
 
             GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
@@ -172,12 +185,102 @@ public abstract class CameraGLRendererBase implements GLSurfaceView.Renderer, Su
         vTCOES  = GLES20.glGetAttribLocation(progOES, "vTexCoord");
         GLES20.glEnableVertexAttribArray(vPosOES);
         GLES20.glEnableVertexAttribArray(vTCOES);
+        GLES20.glUseProgram(progOES);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(progOES, "sTexture"), 0);
 
         prog2D  = loadShader(vss, fss2D);
         vPos2D = GLES20.glGetAttribLocation(prog2D, "vPosition");
         vTC2D  = GLES20.glGetAttribLocation(prog2D, "vTexCoord");
         GLES20.glEnableVertexAttribArray(vPos2D);
         GLES20.glEnableVertexAttribArray(vTC2D);
+        GLES20.glUseProgram(prog2D);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(prog2D, "sTexture"), 0);
+
+        // a new context has none of the old preprocessing objects, so there is nothing to delete
+        mGpuPreprocessor = null;
+        mGpuPreprocessorFailed = false;
+        mPreSize = 0;
+    }
+
+    // runs the preprocessing listener on the frame just latched into texCamera
+    private void preprocessFrame() {
+        PreprocessedFrameListener listener = mView.getPreprocessedFrameListener();
+        int size = mView.getPreprocessSize();
+        if (listener == null || size <= 0)
+            return;
+
+        boolean onGpu = !mView.isSoftwarePreprocessing() && !mGpuPreprocessorFailed;
+        if (size != mPreSize || onGpu != mPreOnGpu)
+            initPreprocessTargets(size, onGpu);
+
+        mPreBuffer.clear();
+        if (mGpuPreprocessor != null) {
+            // texCamera(OES) -> size x size sketch
+            mGpuPreprocessor.process(texCamera[0], mCameraWidth, mCameraHeight, mPreBuffer);
+        } else {
+            // texCamera(OES) -> texFBO, read back the whole frame and process it on the CPU
+            drawTex(texCamera[0], true, FBO[0]);
+            int bytes = mFBOWidth * mFBOHeight * 4;
+            if (mFrameBuffer == null || mFrameBuffer.capacity() != bytes) {
+                if (mFrameMat != null) mFrameMat.release();
+                mFrameMat = Mat.allocateDirect(mFBOHeight, mFBOWidth, CvType.CV_8UC4);
+                mFrameBuffer = mFrameMat.asByteBuffer();
+            }
+            mFrameBuffer.clear();
+            GLES20.glReadPixels(0, 0, mFBOWidth, mFBOHeight, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, mFrameBuffer);
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+            Core.flip(mFrameMat, mFrameMat, 0);
+            mSoftwarePreprocessor.process(mFrameMat, mPreMat);
+        }
+
+        listener.onPreprocessedFrame(mPreMat);
+    }
+
+    private void initPreprocessTargets(int size, boolean onGpu)
+    {
+        Log.d(LOGTAG, "initPreprocessTargets("+size+"x"+size+")");
+
+        deletePreprocessTargets();
+
+        if (onGpu) {
+            mGpuPreprocessor = new GLSketchPreprocessor(size, true);
+            if (!mGpuPreprocessor.isAvailable()) {
+                Log.w(LOGTAG, "Preprocessing shaders are not available, using SketchPreprocessor");
+                mGpuPreprocessor = null;
+                mGpuPreprocessorFailed = true;
+                onGpu = false;
+            }
+        }
+        if (!onGpu)
+            mSoftwarePreprocessor = new SketchPreprocessor(size);
+
+        mPreMat = Mat.allocateDirect(size, size, CvType.CV_8UC4);
+        mPreBuffer = mPreMat.asByteBuffer();
+        mPreSize = size;
+        mPreOnGpu = onGpu;
+    }
+
+    private void deletePreprocessTargets()
+    {
+        if (mGpuPreprocessor != null) {
+            mGpuPreprocessor.release();
+            mGpuPreprocessor = null;
+        }
+        if (mSoftwarePreprocessor != null) {
+            mSoftwarePreprocessor.release();
+            mSoftwarePreprocessor = null;
+        }
+        if (mPreMat != null) {
+            mPreMat.release();
+            mPreMat = null;
+        }
+        if (mFrameMat != null) {
+            mFrameMat.release();
+            mFrameMat = null;
+        }
+        mPreBuffer = null;
+        mFrameBuffer = null;
+        mPreSize = 0;
     }
 
     private void initSurfaceTexture() {
@@ -214,7 +317,7 @@ public abstract class CameraGLRendererBase implements GLSurfaceView.Renderer, Su
         }
     }
 
-    private static int loadShader(String vss, String fss) {
+    static int loadShader(String vss, String fss) {
         Log.d("CameraGLRendererBase", "loadShader");
         int vshader = GLES20.glCreateShader(GLES20.GL_VERTEX_SHADER);
         GLES20.glShaderSource(vshader, vss);
@@ -340,10 +443,8 @@ public abstract class CameraGLRendererBase implements GLSurfaceView.Renderer, Su
 
         if(isOES) {
             GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, tex);
-            GLES20.glUniform1i(GLES20.glGetUniformLocation(progOES, "sTexture"), 0);
         } else {
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, tex);
-            GLES20.glUniform1i(GLES20.glGetUniformLocation(prog2D, "sTexture"), 0);
         }
 
         GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
@@ -1,6 +1,7 @@
 package org.opencv.android;
 
 import org.opencv.R;
+import org.opencv.core.Mat;
 
 import android.content.Context;
 import android.content.res.TypedArray;
@@ -39,7 +40,20 @@ public class CameraGLSurfaceView extends GLSurfaceView {
         public boolean onCameraTexture(int texIn, int texOut, int width, int height);
     };
 
+    public interface PreprocessedFrameListener {
+        /**
+         * This method is invoked on the GL thread for each camera frame once it has been
+         * resized, converted to gray, blurred and color-dodged on the GPU.
+         * @param sketch - size x size RGBA Mat with the sketch in every color channel;
+         *                 it is reused for the next frame
+         */
+        public void onPreprocessedFrame(Mat sketch);
+    };
+
     private CameraTextureListener mTexListener;
+    private PreprocessedFrameListener mPreprocessListener;
+    private int mPreprocessSize;
+    private volatile boolean mSoftwarePreprocessing;
     private CameraGLRendererBase mRenderer;
 
     public CameraGLSurfaceView(Context context, AttributeSet attrs) {
@@ -71,6 +85,40 @@ public class CameraGLSurfaceView extends GLSurfaceView {
         return mTexListener;
     }
 
+    /**
+     * Enables the GPU sketch preprocessing stage; only its size x size result is read back
+     * from the GPU. Pass null to disable it.
+     */
+    public void setPreprocessedFrameListener(PreprocessedFrameListener listener, int size)
+    {
+        mPreprocessSize = size;
+        mPreprocessListener = listener;
+    }
+
+    public PreprocessedFrameListener getPreprocessedFrameListener()
+    {
+        return mPreprocessListener;
+    }
+
+    public int getPreprocessSize()
+    {
+        return mPreprocessSize;
+    }
+
+    /**
+     * Forces the CPU implementation of the preprocessing stage (SketchPreprocessor), which is
+     * otherwise only used when the preprocessing shaders can't be built.
+     */
+    public void setSoftwarePreprocessing(boolean enabled)
+    {
+        mSoftwarePreprocessing = enabled;
+    }
+
+    public boolean isSoftwarePreprocessing()
+    {
+        return mSoftwarePreprocessing;
+    }
+
     public void setCameraIndex(int cameraIndex) {
         mRenderer.setCameraIndex(cameraIndex);
     }
@@ -2,8 +2,6 @@ package org.opencv.android;
 
 import java.text.DecimalFormat;
 
-import org.opencv.core.Core;
-
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -14,9 +12,12 @@ public class FpsMeter {
     private static final int    STEP              = 20;
     private static final DecimalFormat FPS_FORMAT = new DecimalFormat("0.00");
 
+    private final LatencyHistogram mIntervals = new LatencyHistogram();
     private int                 mFramesCounter;
-    private double              mFrequency;
     private long                mprevFrameTime;
+    private long                mStepStartTime;
+    private volatile double     mFps;
+    private boolean             mTextStale;
     private String              mStrfps;
     Paint                       mPaint;
     boolean                     mIsInitialized = false;
@@ -25,41 +26,67 @@ public class FpsMeter {
 
     public void init() {
         mFramesCounter = 0;
-        mFrequency = Core.getTickFrequency();
-        mprevFrameTime = Core.getTickCount();
+        mprevFrameTime = mStepStartTime = System.nanoTime();
         mStrfps = "";
+        mTextStale = false;
 
         mPaint = new Paint();
         mPaint.setColor(Color.BLUE);
         mPaint.setTextSize(20);
     }
 
+    /**
+     * Counts one frame. Records the time since the previous frame; does not allocate.
+     */
     public void measure() {
         if (!mIsInitialized) {
             init();
             mIsInitialized = true;
         } else {
+            long time = System.nanoTime();
+            mIntervals.record(time - mprevFrameTime);
+            mprevFrameTime = time;
             mFramesCounter++;
             if (mFramesCounter % STEP == 0) {
-                long time = Core.getTickCount();
-                double fps = STEP * mFrequency / (time - mprevFrameTime);
-                mprevFrameTime = time;
-                if (mWidth != 0 && mHeight != 0)
-                    mStrfps = FPS_FORMAT.format(fps) + " FPS@" + Integer.valueOf(mWidth) + "x" + Integer.valueOf(mHeight);
-                else
-                    mStrfps = FPS_FORMAT.format(fps) + " FPS";
-                Log.i(TAG, mStrfps);
+                mFps = STEP * 1e9 / (time - mStepStartTime);
+                mStepStartTime = time;
+                mTextStale = true;
             }
         }
     }
 
+    /**
+     * Returns the average frame rate of the last STEP frames.
+     */
+    public double getFps() {
+        return mFps;
+    }
+
+    /**
+     * Returns the histogram of the times between frames, for percentiles of frame time.
+     */
+    public LatencyHistogram getFrameIntervals() {
+        return mIntervals;
+    }
+
     public void setResolution(int width, int height) {
         mWidth = width;
         mHeight = height;
+        mTextStale = true;
     }
 
     public void draw(Canvas canvas, float offsetx, float offsety) {
-        Log.d(TAG, mStrfps);
+        if (mStrfps == null)
+            return;
+        if (mTextStale) {
+            // the text is only rebuilt when the rate changed, once every STEP frames
+            if (mWidth != 0 && mHeight != 0)
+                mStrfps = FPS_FORMAT.format(mFps) + " FPS@" + Integer.valueOf(mWidth) + "x" + Integer.valueOf(mHeight);
+            else
+                mStrfps = FPS_FORMAT.format(mFps) + " FPS";
+            mTextStale = false;
+            Log.d(TAG, mStrfps);
+        }
         canvas.drawText(mStrfps, offsetx, offsety, mPaint);
     }
 
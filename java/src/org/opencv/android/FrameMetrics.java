@@ -0,0 +1,106 @@
+package org.opencv.android;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-stage latency histograms and dropped frame counters of a camera preview.
+ * CameraBridgeViewBase fills the camera stages; INFERENCE and DROP_INFERENCE are
+ * left to the application. All methods are thread safe and recording does not allocate.
+ */
+public class FrameMetrics {
+
+    /** From the camera handing over a frame until the worker picks it up. */
+    public static final int CAPTURE   = 0;
+    /** Copying the camera data into the frame Mats. */
+    public static final int CONVERT   = 1;
+    /** The onCameraFrame() callback. */
+    public static final int LISTENER  = 2;
+    /** Converting the returned Mat for display (Bitmap or direct surface copy). */
+    public static final int BITMAP    = 3;
+    /** From a converted frame being ready until it is posted to the surface. */
+    public static final int DRAW      = 4;
+    /** Model inference, recorded by the application. */
+    public static final int INFERENCE = 5;
+    public static final int STAGE_COUNT = 6;
+
+    /** Frames replaced by a newer one before the worker could pick them up. */
+    public static final int DROP_CAMERA    = 0;
+    /** Processed frames replaced by a newer one before they could be drawn. */
+    public static final int DROP_DISPLAY   = 1;
+    /** Frames not sent to inference because it was still busy. */
+    public static final int DROP_INFERENCE = 2;
+    public static final int DROP_COUNT     = 3;
+
+    private final LatencyHistogram[] mStages = new LatencyHistogram[STAGE_COUNT];
+    private final AtomicLongArray mDropped = new AtomicLongArray(DROP_COUNT);
+
+    public FrameMetrics() {
+        for (int i = 0; i < STAGE_COUNT; i++)
+            mStages[i] = new LatencyHistogram();
+    }
+
+    public void record(int stage, long nanos) {
+        mStages[stage].record(nanos);
+    }
+
+    public void recordDropped(int reason) {
+        mDropped.incrementAndGet(reason);
+    }
+
+    public LatencyHistogram getStage(int stage) {
+        return mStages[stage];
+    }
+
+    public double getPercentileMs(int stage, double percentile) {
+        return mStages[stage].getPercentileMs(percentile);
+    }
+
+    public long getDroppedCount(int reason) {
+        return mDropped.get(reason);
+    }
+
+    public void reset() {
+        for (int i = 0; i < STAGE_COUNT; i++)
+            mStages[i].reset();
+        for (int i = 0; i < DROP_COUNT; i++)
+            mDropped.set(i, 0);
+    }
+
+    /**
+     * Formats p50/p95/p99 of every stage that has values, plus the drop counters.
+     * Allocates; meant for logging now and then, not per frame.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            LatencyHistogram h = mStages[i];
+            if (h.getCount() == 0)
+                continue;
+            sb.append(stageName(i)).append(" p50=").append(format(h.getPercentileMs(50)))
+              .append(" p95=").append(format(h.getPercentileMs(95)))
+              .append(" p99=").append(format(h.getPercentileMs(99)))
+              .append(" ms (").append(h.getCount()).append(")\n");
+        }
+        sb.append("dropped camera=").append(mDropped.get(DROP_CAMERA))
+          .append(" display=").append(mDropped.get(DROP_DISPLAY))
+          .append(" inference=").append(mDropped.get(DROP_INFERENCE));
+        return sb.toString();
+    }
+
+    private static String format(double ms) {
+        return String.valueOf(Math.round(ms * 100) / 100.0);
+    }
+
+    private static String stageName(int stage) {
+        switch (stage) {
+        case CAPTURE:   return "capture";
+        case CONVERT:   return "convert";
+        case LISTENER:  return "listener";
+        case BITMAP:    return "bitmap";
+        case DRAW:      return "draw";
+        case INFERENCE: return "inference";
+        default:        return "stage" + stage;
+        }
+    }
+}
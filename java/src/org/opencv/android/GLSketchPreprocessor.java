@@ -0,0 +1,284 @@
+package org.opencv.android;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import android.annotation.TargetApi;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.util.Log;
+
+/**
+ * GPU implementation of the sketch preprocessing, the counterpart of SketchPreprocessor:
+ * an area downscale of a texture to a size x size gray image, then a 21x21 Gaussian blur in
+ * two separable passes, the second of which also color-dodges the gray image with its blur.
+ * CameraGLRendererBase runs it on the camera texture; it runs just as well on a 2D texture,
+ * which is how its output is checked against SketchPreprocessor.
+ *
+ * All methods must be called on the thread that holds the OpenGL ES 2.0 context the
+ * preprocessor was created in.
+ */
+@TargetApi(15)
+public class GLSketchPreprocessor {
+
+    private static final String LOGTAG = "GLSketchPreprocessor";
+
+    private static final int BLUR_RADIUS = 10; // 21x21 kernel, as in SketchPreprocessor
+    private static final double BLUR_SIGMA = 3.5; // what GaussianBlur derives for ksize 21
+    // Source texels averaged per axis for an output pixel: enough for an exact box filter of a
+    // 2048 pixel frame at the 256 pixel model size; larger frames are sampled evenly instead.
+    private static final int MAX_TAPS = 8;
+
+    private static final String vss = ""
+            + "attribute vec2 vPosition;\n"
+            + "attribute vec2 vTexCoord;\n" + "varying vec2 texCoord;\n"
+            + "void main() {\n" + "  texCoord = vTexCoord;\n"
+            + "  gl_Position = vec4 ( vPosition.x, vPosition.y, 0.0, 1.0 );\n"
+            + "}";
+
+    // uTaps x uTaps samples at the texel centers of the area covered by the output pixel
+    private static String grayShader(boolean external) {
+        return (external ? "#extension GL_OES_EGL_image_external : require\n" : "")
+            // texture coordinates of a large frame need more than mediump to address single texels
+            + "#ifdef GL_FRAGMENT_PRECISION_HIGH\n"
+            + "precision highp float;\n"
+            + "#else\n"
+            + "precision mediump float;\n"
+            + "#endif\n"
+            + "uniform " + (external ? "samplerExternalOES" : "sampler2D") + " sTexture;\n"
+            + "uniform vec2 uStep;\n"
+            + "uniform vec2 uTaps;\n"
+            + "varying vec2 texCoord;\n"
+            + "void main() {\n"
+            + "  vec2 origin = texCoord - uStep*(uTaps - 1.0)*0.5;\n"
+            + "  vec3 c = vec3(0.0);\n"
+            + "  for (int y = 0; y < " + MAX_TAPS + "; y++) {\n"
+            + "    if (float(y) >= uTaps.y) break;\n"
+            + "    for (int x = 0; x < " + MAX_TAPS + "; x++) {\n"
+            + "      if (float(x) >= uTaps.x) break;\n"
+            + "      c += texture2D(sTexture,origin+uStep*vec2(float(x),float(y))).rgb;\n"
+            + "    }\n"
+            + "  }\n"
+            + "  float g = dot(c/(uTaps.x*uTaps.y), vec3(0.299,0.587,0.114));\n"
+            + "  gl_FragColor = vec4(g,g,g,1.0);\n" + "}";
+    }
+
+    private static final String fssBlur = ""
+            + "precision mediump float;\n"
+            + "uniform sampler2D sTexture;\n"
+            + "uniform vec2 uStep;\n"
+            + "uniform float uWeights[" + (BLUR_RADIUS + 1) + "];\n"
+            + "varying vec2 texCoord;\n"
+            + "void main() {\n"
+            + "  float b = texture2D(sTexture,texCoord).r*uWeights[0];\n"
+            + "  for (int i = 1; i <= " + BLUR_RADIUS + "; i++) {\n"
+            + "    vec2 d = uStep*float(i);\n"
+            + "    b += (texture2D(sTexture,texCoord+d).r + texture2D(sTexture,texCoord-d).r)*uWeights[i];\n"
+            + "  }\n"
+            + "  gl_FragColor = vec4(b,b,b,1.0);\n" + "}";
+
+    // SketchPreprocessor.dodge(), saturated the same way
+    private static final String fssDodge = ""
+            + "precision mediump float;\n"
+            + "uniform sampler2D sTexture;\n"
+            + "uniform sampler2D sGray;\n"
+            + "uniform vec2 uStep;\n"
+            + "uniform float uWeights[" + (BLUR_RADIUS + 1) + "];\n"
+            + "varying vec2 texCoord;\n"
+            + "void main() {\n"
+            + "  float b = texture2D(sTexture,texCoord).r*uWeights[0];\n"
+            + "  for (int i = 1; i <= " + BLUR_RADIUS + "; i++) {\n"
+            + "    vec2 d = uStep*float(i);\n"
+            + "    b += (texture2D(sTexture,texCoord+d).r + texture2D(sTexture,texCoord-d).r)*uWeights[i];\n"
+            + "  }\n"
+            + "  float g = texture2D(sGray,texCoord).r;\n"
+            + "  float s = b > 0.0 ? min(1.0, g*256.0/(b*255.0)) : 0.0;\n"
+            + "  gl_FragColor = vec4(s,s,s,1.0);\n" + "}";
+
+    private static final float vertices[] = {
+           -1, -1,
+           -1,  1,
+            1, -1,
+            1,  1 };
+    private static final float texCoords[] = {
+            0,  0,
+            0,  1,
+            1,  0,
+            1,  1 };
+
+    private final int mSize;
+    private final boolean mExternal;
+    private final FloatBuffer mVert, mTexCoord;
+
+    private int[] mTex = {0, 0, 0}, mFBO = {0, 0, 0};
+    private int mProgGray, mProgBlur, mProgDodge;
+    // looked up once the programs are linked
+    private int mGrayPos, mGrayTC, mGrayStep, mGrayTaps;
+    private int mBlurPos, mBlurTC, mBlurStep;
+    private int mDodgePos, mDodgeTC, mDodgeStep;
+
+    /**
+     * Builds the shaders and the size x size render targets.
+     * @param size - side of the square result
+     * @param external - whether the source textures are GL_TEXTURE_EXTERNAL_OES, as the
+     *                   camera texture is, rather than GL_TEXTURE_2D
+     */
+    public GLSketchPreprocessor(int size, boolean external) {
+        mSize = size;
+        mExternal = external;
+        int bytes = vertices.length * Float.SIZE / Byte.SIZE;
+        mVert     = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mTexCoord = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mVert.put(vertices).position(0);
+        mTexCoord.put(texCoords).position(0);
+
+        mProgGray  = CameraGLRendererBase.loadShader(vss, grayShader(external));
+        mProgBlur  = CameraGLRendererBase.loadShader(vss, fssBlur);
+        mProgDodge = CameraGLRendererBase.loadShader(vss, fssDodge);
+        if (mProgGray == 0 || mProgBlur == 0 || mProgDodge == 0) {
+            Log.e(LOGTAG, "Preprocessing shaders can't be built");
+            release();
+            return;
+        }
+
+        float[] weights = new float[BLUR_RADIUS + 1];
+        double sum = 0;
+        for (int i = 0; i <= BLUR_RADIUS; i++) {
+            weights[i] = (float) Math.exp(-i * i / (2 * BLUR_SIGMA * BLUR_SIGMA));
+            sum += i == 0 ? weights[i] : 2 * weights[i];
+        }
+        for (int i = 0; i <= BLUR_RADIUS; i++)
+            weights[i] /= sum;
+
+        // samplers and weights never change, so they are set once here
+        mGrayPos  = GLES20.glGetAttribLocation(mProgGray, "vPosition");
+        mGrayTC   = GLES20.glGetAttribLocation(mProgGray, "vTexCoord");
+        mGrayStep = GLES20.glGetUniformLocation(mProgGray, "uStep");
+        mGrayTaps = GLES20.glGetUniformLocation(mProgGray, "uTaps");
+        GLES20.glUseProgram(mProgGray);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mProgGray, "sTexture"), 0);
+
+        mBlurPos  = GLES20.glGetAttribLocation(mProgBlur, "vPosition");
+        mBlurTC   = GLES20.glGetAttribLocation(mProgBlur, "vTexCoord");
+        mBlurStep = GLES20.glGetUniformLocation(mProgBlur, "uStep");
+        GLES20.glUseProgram(mProgBlur);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mProgBlur, "sTexture"), 0);
+        GLES20.glUniform1fv(GLES20.glGetUniformLocation(mProgBlur, "uWeights"), weights.length, weights, 0);
+
+        mDodgePos  = GLES20.glGetAttribLocation(mProgDodge, "vPosition");
+        mDodgeTC   = GLES20.glGetAttribLocation(mProgDodge, "vTexCoord");
+        mDodgeStep = GLES20.glGetUniformLocation(mProgDodge, "uStep");
+        GLES20.glUseProgram(mProgDodge);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mProgDodge, "sTexture"), 0);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mProgDodge, "sGray"), 1);
+        GLES20.glUniform1fv(GLES20.glGetUniformLocation(mProgDodge, "uWeights"), weights.length, weights, 0);
+        GLES20.glUseProgram(0);
+
+        // attribute arrays are enabled per context, not per program
+        GLES20.glEnableVertexAttribArray(mGrayPos);
+        GLES20.glEnableVertexAttribArray(mGrayTC);
+        GLES20.glEnableVertexAttribArray(mBlurPos);
+        GLES20.glEnableVertexAttribArray(mBlurTC);
+        GLES20.glEnableVertexAttribArray(mDodgePos);
+        GLES20.glEnableVertexAttribArray(mDodgeTC);
+
+        GLES20.glGenTextures(3, mTex, 0);
+        GLES20.glGenFramebuffers(3, mFBO, 0);
+        for (int i = 0; i < 3; i++) {
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTex[i]);
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, size, size, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFBO[i]);
+            GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, mTex[i], 0);
+            int FBOstatus = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+            if (FBOstatus != GLES20.GL_FRAMEBUFFER_COMPLETE)
+                Log.e(LOGTAG, "Preprocessing target failed, status: " + FBOstatus);
+        }
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    }
+
+    /**
+     * Returns false if the shaders could not be built; process() must not be called then.
+     */
+    public boolean isAvailable() {
+        return mProgGray != 0;
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Preprocesses a texture of any size.
+     * @param texture - the source texture, of the kind given to the constructor
+     * @param width - the width of the source texture
+     * @param height - the height of the source texture
+     * @param dst - receives the size x size sketch as RGBA, top row first, from its position on;
+     *              the framebuffer binding is reset to 0 afterwards
+     */
+    public void process(int texture, int width, int height, ByteBuffer dst) {
+        // at least one sample per source texel, up to MAX_TAPS
+        int tapsX = Math.max(1, Math.min(MAX_TAPS, (width + mSize - 1) / mSize));
+        int tapsY = Math.max(1, Math.min(MAX_TAPS, (height + mSize - 1) / mSize));
+        float pixel = 1.0f / mSize;
+
+        // texture -> mTex[0] gray, upright so that glReadPixels returns the top row first
+        GLES20.glUseProgram(mProgGray);
+        GLES20.glUniform2f(mGrayTaps, tapsX, tapsY);
+        GLES20.glUniform2f(mGrayStep, pixel / tapsX, pixel / tapsY);
+        drawPass(mGrayPos, mGrayTC, texture, mExternal, mFBO[0], 0);
+
+        // mTex[0] -> mTex[1] horizontal blur
+        GLES20.glUseProgram(mProgBlur);
+        GLES20.glUniform2f(mBlurStep, pixel, 0);
+        drawPass(mBlurPos, mBlurTC, mTex[0], false, mFBO[1], 0);
+
+        // mTex[1] -> mTex[2] vertical blur and dodge with mTex[0]
+        GLES20.glUseProgram(mProgDodge);
+        GLES20.glUniform2f(mDodgeStep, 0, pixel);
+        drawPass(mDodgePos, mDodgeTC, mTex[1], false, mFBO[2], mTex[0]);
+
+        GLES20.glReadPixels(0, 0, mSize, mSize, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, dst);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    }
+
+    // draws tex into fbo with the program in use
+    private void drawPass(int vPos, int vTC, int tex, boolean isOES, int fbo, int texGray) {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, fbo);
+        GLES20.glViewport(0, 0, mSize, mSize);
+
+        GLES20.glVertexAttribPointer(vPos, 2, GLES20.GL_FLOAT, false, 4*2, mVert);
+        GLES20.glVertexAttribPointer(vTC,  2, GLES20.GL_FLOAT, false, 4*2, mTexCoord);
+
+        if (texGray != 0) {
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texGray);
+        }
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(isOES ? GLES11Ext.GL_TEXTURE_EXTERNAL_OES : GLES20.GL_TEXTURE_2D, tex);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    }
+
+    /**
+     * Deletes the shaders and render targets. Not needed if the context itself is gone.
+     */
+    public void release() {
+        if (mTex[0] != 0) {
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+            GLES20.glDeleteFramebuffers(3, mFBO, 0);
+            GLES20.glDeleteTextures(3, mTex, 0);
+            mTex[0] = mTex[1] = mTex[2] = 0;
+            mFBO[0] = mFBO[1] = mFBO[2] = 0;
+        }
+        if (mProgGray != 0) GLES20.glDeleteProgram(mProgGray);
+        if (mProgBlur != 0) GLES20.glDeleteProgram(mProgBlur);
+        if (mProgDodge != 0) GLES20.glDeleteProgram(mProgDodge);
+        mProgGray = mProgBlur = mProgDodge = 0;
+    }
+}
@@ -49,7 +49,7 @@ public class JavaCamera2View extends CameraBridgeViewBase {
     private CaptureRequest.Builder mPreviewRequestBuilder;
     private String mCameraID;
     private android.util.Size mPreviewSize = new android.util.Size(-1, -1);
-
+    private JavaCamera2Frame mFrame;
     private HandlerThread mBackgroundThread;
     private Handler mBackgroundHandler;
 
@@ -159,10 +159,16 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 return;
             }
 
+            if (mFrame != null)
+                mFrame.release();
+            final JavaCamera2Frame frame = new JavaCamera2Frame(w, h);
+            mFrame = frame;
+
             mImageReader = ImageReader.newInstance(w, h, mPreviewFormat, 2);
             mImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
                 @Override
                 public void onImageAvailable(ImageReader reader) {
+                    long captureTime = System.nanoTime();
                     Image image = reader.acquireLatestImage();
                     if (image == null)
                         return;
@@ -178,14 +184,24 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     assert (planes[1].getPixelStride() == 2);
                     assert (planes[2].getPixelStride() == 2);
 
+                    // The planes are wrapped without copying, with their row stride, and the
+                    // wrappers are released before the Image is closed: the reader frees or
+                    // reuses the plane buffers once it gets the Image back.
+                    long convertStart = System.nanoTime();
                     ByteBuffer y_plane = planes[0].getBuffer();
                     ByteBuffer uv_plane = planes[1].getBuffer();
-                    Mat y_mat = new Mat(h, w, CvType.CV_8UC1, y_plane);
-                    Mat uv_mat = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane);
-                    JavaCamera2Frame tempFrame = new JavaCamera2Frame(y_mat, uv_mat, w, h);
-                    deliverAndDrawFrame(tempFrame);
-                    tempFrame.release();
-                    image.close();
+                    Mat y_mat = new Mat(h, w, CvType.CV_8UC1, y_plane, planes[0].getRowStride());
+                    Mat uv_mat = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane, planes[1].getRowStride());
+                    frame.setPlanes(y_mat, uv_mat);
+                    mMetrics.record(FrameMetrics.CONVERT, System.nanoTime() - convertStart);
+                    try {
+                        deliverAndDrawFrame(frame, captureTime);
+                    } finally {
+                        frame.setPlanes(null, null);
+                        y_mat.release();
+                        uv_mat.release();
+                        image.close();
+                    }
                 }
             }, mBackgroundHandler);
             Surface surface = mImageReader.getSurface();
@@ -246,6 +262,10 @@ public class JavaCamera2View extends CameraBridgeViewBase {
             }
         } finally {
             stopBackgroundThread();
+            if (mFrame != null) {
+                mFrame.release();
+                mFrame = null;
+            }
         }
     }
 
@@ -322,53 +342,70 @@ public class JavaCamera2View extends CameraBridgeViewBase {
         return true;
     }
 
-    private class JavaCamera2Frame implements CvCameraViewFrame {
+    private class JavaCamera2Frame extends CachedCameraViewFrame {
         @Override
-        public Mat gray() {
-            return mYuvFrameData.submat(0, mHeight, 0, mWidth);
+        protected Mat grayPlane() {
+            return mGray;
+        }
+
+        @Override
+        protected void convertToRgba(Mat dst) {
+            if (mPreviewFormat == ImageFormat.NV21)
+                Imgproc.cvtColor(mYuvFrameData, dst, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+            else if (mPreviewFormat == ImageFormat.YV12)
+                Imgproc.cvtColor(mYuvFrameData, dst, Imgproc.COLOR_YUV2RGB_I420, 4); // COLOR_YUV2RGBA_YV12 produces inverted colors
+            else if (mPreviewFormat == ImageFormat.YUV_420_888) {
+                assert (mUVFrameData != null);
+                Imgproc.cvtColorTwoPlane(mYuvFrameData, mUVFrameData, dst, Imgproc.COLOR_YUV2RGBA_NV21);
+            } else
+                throw new IllegalArgumentException("Preview Format can be NV21 or YV12");
         }
 
         @Override
-        public Mat rgba() {
+        protected void convertToBgr(Mat dst) {
             if (mPreviewFormat == ImageFormat.NV21)
-                Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+                Imgproc.cvtColor(mYuvFrameData, dst, Imgproc.COLOR_YUV2BGR_NV21, 3);
             else if (mPreviewFormat == ImageFormat.YV12)
-                Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGB_I420, 4); // COLOR_YUV2RGBA_YV12 produces inverted colors
+                Imgproc.cvtColor(mYuvFrameData, dst, Imgproc.COLOR_YUV2BGR_I420, 3); // same channel swap as rgba()
             else if (mPreviewFormat == ImageFormat.YUV_420_888) {
                 assert (mUVFrameData != null);
-                Imgproc.cvtColorTwoPlane(mYuvFrameData, mUVFrameData, mRgba, Imgproc.COLOR_YUV2RGBA_NV21);
+                Imgproc.cvtColorTwoPlane(mYuvFrameData, mUVFrameData, dst, Imgproc.COLOR_YUV2BGR_NV21);
             } else
                 throw new IllegalArgumentException("Preview Format can be NV21 or YV12");
+        }
 
-            return mRgba;
+        @Override
+        protected Mat chromaPlane() {
+            return mUVFrameData;
         }
 
-        public JavaCamera2Frame(Mat Yuv420sp, int width, int height) {
-            super();
-            mWidth = width;
-            mHeight = height;
-            mYuvFrameData = Yuv420sp;
-            mUVFrameData = null;
-            mRgba = new Mat();
+        /**
+         * Creates a frame that is reused for the whole capture session; the RGBA
+         * buffer is allocated once and the planes are set for each image.
+         */
+        public JavaCamera2Frame(int width, int height) {
+            super(width, height);
         }
 
-        public JavaCamera2Frame(Mat Y, Mat UV, int width, int height) {
-            super();
-            mWidth = width;
-            mHeight = height;
+        /**
+         * Points the frame at a new image. With a separate UV plane the Y plane is
+         * exactly the gray image; otherwise gray is the top of the YUV buffer.
+         */
+        public void setPlanes(Mat Y, Mat UV) {
+            releasePlaneViews();
+            if (mGray != null && mGray != mYuvFrameData)
+                mGray.release();
             mYuvFrameData = Y;
             mUVFrameData = UV;
-            mRgba = new Mat();
-        }
-
-        public void release() {
-            mRgba.release();
+            if (Y == null)
+                mGray = null;
+            else
+                mGray = UV != null ? Y : Y.submat(0, mHeight, 0, mWidth);
+            nextGeneration();
         }
 
         private Mat mYuvFrameData;
         private Mat mUVFrameData;
-        private Mat mRgba;
-        private int mWidth;
-        private int mHeight;
+        private Mat mGray;
     };
 }
@@ -1,6 +1,8 @@
 package org.opencv.android;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import android.content.Context;
 import android.graphics.ImageFormat;
@@ -31,12 +33,36 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
     private static final int MAGIC_TEXTURE_ID = 10;
     private static final String TAG = "JavaCameraView";
-
-    private byte mBuffer[];
+    private static final int FRAME_SLOT_COUNT = 3;
+    private static final int SLOT_INDEX_MASK = 0xFF;
+    private static final int SLOT_DIRTY = 0x100;
+
+    /*
+     * Frames are exchanged through a lock-free triple buffer. Slot i pairs callback buffer
+     * mCallbackBuffers[i] with frame Mat mFrameChain[i]. The camera thread publishes the
+     * slot of each filled buffer in mMiddleSlot, flagged with SLOT_DIRTY, without copying
+     * it; the worker swaps the dirty slot for its front slot, copies the buffer into the
+     * slot's Mat and marks the slot in mCopiedSlots. A slot published over a dirty one
+     * replaces it (latest frame wins) and counts as dropped.
+     *
+     * Camera is not thread-safe, so buffers are only handed back to it on the camera
+     * thread: each onPreviewFrame() returns the replaced buffer and the buffers copied
+     * since the last call. The camera always keeps at least one buffer, as the worker
+     * and the middle slot hold at most two.
+     *
+     * The legacy Camera API only fills byte[] buffers, which a Mat cannot wrap, so the
+     * Mat.put() copy remains on every frame; it runs on the worker and is recorded as
+     * FrameMetrics.CONVERT.
+     */
+    private byte[][] mCallbackBuffers;
+    private long[] mSlotCaptureTimes;
     private Mat[] mFrameChain;
-    private int mChainIdx = 0;
-    private Thread mThread;
-    private boolean mStopThread;
+    private int mFrontSlot;
+    private final AtomicInteger mMiddleSlot = new AtomicInteger();
+    // bit i is set while the buffer of slot i is copied but not yet back with the camera
+    private final AtomicInteger mCopiedSlots = new AtomicInteger();
+    private volatile Thread mThread;
+    private volatile boolean mStopThread;
 
     protected Camera mCamera;
     protected JavaCameraFrame[] mCameraFrame;
@@ -190,21 +216,25 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
                     int size = mFrameWidth * mFrameHeight;
                     size  = size * ImageFormat.getBitsPerPixel(params.getPreviewFormat()) / 8;
-                    mBuffer = new byte[size];
-
-                    mCamera.addCallbackBuffer(mBuffer);
+                    mCallbackBuffers = new byte[FRAME_SLOT_COUNT][];
+                    mSlotCaptureTimes = new long[FRAME_SLOT_COUNT];
+                    mFrameChain = new Mat[FRAME_SLOT_COUNT];
+                    mCameraFrame = new JavaCameraFrame[FRAME_SLOT_COUNT];
+                    for (int i = 0; i < FRAME_SLOT_COUNT; i++) {
+                        mCallbackBuffers[i] = new byte[size];
+                        mFrameChain[i] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
+                        mCameraFrame[i] = new JavaCameraFrame(mFrameChain[i], mFrameWidth, mFrameHeight);
+                    }
+                    // all buffers start with the camera, so no slot is dirty or waiting to go back
+                    for (int i = 0; i < FRAME_SLOT_COUNT; i++)
+                        mCamera.addCallbackBuffer(mCallbackBuffers[i]);
                     mCamera.setPreviewCallbackWithBuffer(this);
-
-                    mFrameChain = new Mat[2];
-                    mFrameChain[0] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
-                    mFrameChain[1] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
+                    mFrontSlot = 0;
+                    mMiddleSlot.set(1);
+                    mCopiedSlots.set(0);
 
                     AllocateCache();
 
-                    mCameraFrame = new JavaCameraFrame[2];
-                    mCameraFrame[0] = new JavaCameraFrame(mFrameChain[0], mFrameWidth, mFrameHeight);
-                    mCameraFrame[1] = new JavaCameraFrame(mFrameChain[1], mFrameWidth, mFrameHeight);
-
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
                         mSurfaceTexture = new SurfaceTexture(MAGIC_TEXTURE_ID);
                         mCamera.setPreviewTexture(mSurfaceTexture);
@@ -236,17 +266,23 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
             }
             mCamera = null;
             if (mFrameChain != null) {
-                mFrameChain[0].release();
-                mFrameChain[1].release();
+                for (Mat frame : mFrameChain)
+                    frame.release();
             }
             if (mCameraFrame != null) {
-                mCameraFrame[0].release();
-                mCameraFrame[1].release();
+                for (JavaCameraFrame frame : mCameraFrame)
+                    frame.release();
             }
         }
     }
 
-    private boolean mCameraFrameReady = false;
+    /**
+     * Returns the number of preview frames overwritten by a newer frame before the
+     * processing thread could pick them up.
+     */
+    public long getDroppedFrameCount() {
+        return mMetrics.getDroppedCount(FrameMetrics.DROP_CAMERA);
+    }
 
     @Override
     protected boolean connectCamera(int width, int height) {
@@ -259,8 +295,6 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         if (!initializeCamera(width, height))
             return false;
 
-        mCameraFrameReady = false;
-
         /* now we can start update thread */
         Log.d(TAG, "Starting processing thread");
         mStopThread = false;
@@ -279,9 +313,7 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         try {
             mStopThread = true;
             Log.d(TAG, "Notify thread");
-            synchronized (this) {
-                this.notify();
-            }
+            LockSupport.unpark(mThread);
             Log.d(TAG, "Waiting for thread");
             if (mThread != null)
                 mThread.join();
@@ -293,87 +325,126 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
         /* Now release camera */
         releaseCamera();
-
-        mCameraFrameReady = false;
     }
 
     @Override
     public void onPreviewFrame(byte[] frame, Camera arg1) {
         if (BuildConfig.DEBUG)
             Log.d(TAG, "Preview Frame received. Frame size: " + frame.length);
-        synchronized (this) {
-            mFrameChain[mChainIdx].put(0, 0, frame);
-            mCameraFrameReady = true;
-            this.notify();
+        int slot = slotOf(frame);
+        if (slot < 0)
+            return; // a buffer of a previous camera session
+        mSlotCaptureTimes[slot] = System.nanoTime();
+        int previous = mMiddleSlot.getAndSet(slot | SLOT_DIRTY);
+        LockSupport.unpark(mThread);
+
+        if ((previous & SLOT_DIRTY) != 0)
+            mMetrics.recordDropped(FrameMetrics.DROP_CAMERA);
+        if (mCamera == null)
+            return;
+        if ((previous & SLOT_DIRTY) != 0)
+            mCamera.addCallbackBuffer(mCallbackBuffers[previous & SLOT_INDEX_MASK]);
+        int copied = mCopiedSlots.getAndSet(0);
+        for (int i = 0; copied != 0; i++, copied >>>= 1) {
+            if ((copied & 1) != 0)
+                mCamera.addCallbackBuffer(mCallbackBuffers[i]);
+        }
+    }
+
+    private int slotOf(byte[] frame) {
+        byte[][] buffers = mCallbackBuffers;
+        for (int i = 0; i < buffers.length; i++) {
+            if (buffers[i] == frame)
+                return i;
         }
-        if (mCamera != null)
-            mCamera.addCallbackBuffer(mBuffer);
+        return -1;
     }
 
-    private class JavaCameraFrame implements CvCameraViewFrame {
+    private class JavaCameraFrame extends CachedCameraViewFrame {
         @Override
-        public Mat gray() {
-            return mYuvFrameData.submat(0, mHeight, 0, mWidth);
+        protected Mat grayPlane() {
+            return mGray;
+        }
+
+        @Override
+        protected void convertToRgba(Mat dst) {
+            if (mPreviewFormat == ImageFormat.NV21)
+                Imgproc.cvtColor(mYuvFrameData, dst, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+            else if (mPreviewFormat == ImageFormat.YV12)
+                Imgproc.cvtColor(mYuvFrameData, dst, Imgproc.COLOR_YUV2RGB_I420, 4);  // COLOR_YUV2RGBA_YV12 produces inverted colors
+            else
+                throw new IllegalArgumentException("Preview Format can be NV21 or YV12");
         }
 
         @Override
-        public Mat rgba() {
+        protected void convertToBgr(Mat dst) {
             if (mPreviewFormat == ImageFormat.NV21)
-                Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+                Imgproc.cvtColor(mYuvFrameData, dst, Imgproc.COLOR_YUV2BGR_NV21, 3);
             else if (mPreviewFormat == ImageFormat.YV12)
-                Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGB_I420, 4);  // COLOR_YUV2RGBA_YV12 produces inverted colors
+                Imgproc.cvtColor(mYuvFrameData, dst, Imgproc.COLOR_YUV2BGR_I420, 3);  // same channel swap as rgba()
             else
                 throw new IllegalArgumentException("Preview Format can be NV21 or YV12");
+        }
 
-            return mRgba;
+        @Override
+        protected Mat chromaPlane() {
+            return mPreviewFormat == ImageFormat.NV21 ? mChroma : null;
         }
 
         public JavaCameraFrame(Mat Yuv420sp, int width, int height) {
-            super();
-            mWidth = width;
-            mHeight = height;
+            super(width, height);
             mYuvFrameData = Yuv420sp;
-            mRgba = new Mat();
+            mGray = Yuv420sp.submat(0, height, 0, width);
+            // NV21 stores the VU pairs of each 2x2 block in the rows below the Y plane
+            mChromaRows = Yuv420sp.rowRange(height, height + height / 2);
+            mChroma = mChromaRows.reshape(2);
         }
 
+        @Override
         public void release() {
-            mRgba.release();
+            super.release();
+            mGray.release();
+            mChroma.release();
+            mChromaRows.release();
         }
 
         private Mat mYuvFrameData;
-        private Mat mRgba;
-        private int mWidth;
-        private int mHeight;
+        private Mat mGray;
+        private Mat mChromaRows;
+        private Mat mChroma;
     };
 
     private class CameraWorker implements Runnable {
 
         @Override
         public void run() {
-            do {
-                boolean hasFrame = false;
-                synchronized (JavaCameraView.this) {
-                    try {
-                        while (!mCameraFrameReady && !mStopThread) {
-                            JavaCameraView.this.wait();
-                        }
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    if (mCameraFrameReady)
-                    {
-                        mChainIdx = 1 - mChainIdx;
-                        mCameraFrameReady = false;
-                        hasFrame = true;
-                    }
-                }
-
-                if (!mStopThread && hasFrame) {
-                    if (!mFrameChain[1 - mChainIdx].empty())
-                        deliverAndDrawFrame(mCameraFrame[1 - mChainIdx]);
+            while (!mStopThread) {
+                if ((mMiddleSlot.get() & SLOT_DIRTY) == 0) {
+                    LockSupport.park(this);
+                    continue;
                 }
-            } while (!mStopThread);
+                // the front slot's buffer is back with the camera, so it goes in clean
+                int slot = mMiddleSlot.getAndSet(mFrontSlot) & SLOT_INDEX_MASK;
+                mFrontSlot = slot;
+
+                long captureTime = mSlotCaptureTimes[slot];
+                long convertStart = System.nanoTime();
+                mFrameChain[slot].put(0, 0, mCallbackBuffers[slot]);
+                mCameraFrame[slot].nextGeneration();
+                mMetrics.record(FrameMetrics.CONVERT, System.nanoTime() - convertStart);
+                markCopied(slot);
+
+                deliverAndDrawFrame(mCameraFrame[slot], captureTime);
+            }
             Log.d(TAG, "Finish processing thread");
         }
+
+        // queues the buffer of slot for the camera thread to hand back
+        private void markCopied(int slot) {
+            int copied;
+            do {
+                copied = mCopiedSlots.get();
+            } while (!mCopiedSlots.compareAndSet(copied, copied | (1 << slot)));
+        }
     }
 }
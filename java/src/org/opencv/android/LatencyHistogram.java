@@ -0,0 +1,97 @@
+package org.opencv.android;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size latency histogram with log-linear buckets, in the manner of HdrHistogram:
+ * values are kept in microseconds, exact below 64us and within about 3% above, up to
+ * about a minute. Recording is lock-free and does not allocate, so it can be called on
+ * every frame; percentiles may be read from any thread while values are recorded.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS  = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT     = 2 * SUB_BUCKET_COUNT;
+    private static final int MAX_SHIFT        = 21;
+    private static final int BUCKET_COUNT     = LINEAR_LIMIT + MAX_SHIFT * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mTotalCount = new AtomicLong();
+    private final AtomicLong mTotalMicros = new AtomicLong();
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    /**
+     * Records one latency.
+     * @param nanos - the latency in nanoseconds; negative values count as 0
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        mCounts.incrementAndGet(bucketIndex(micros));
+        mTotalCount.incrementAndGet();
+        mTotalMicros.addAndGet(micros);
+        long max = mMaxMicros.get();
+        while (micros > max && !mMaxMicros.compareAndSet(max, micros))
+            max = mMaxMicros.get();
+    }
+
+    public long getCount() {
+        return mTotalCount.get();
+    }
+
+    public double getMeanMs() {
+        long count = mTotalCount.get();
+        return count == 0 ? 0 : mTotalMicros.get() / 1e3 / count;
+    }
+
+    public double getMaxMs() {
+        return mMaxMicros.get() / 1e3;
+    }
+
+    /**
+     * Returns the latency below which the given percentage of the recorded values fall,
+     * in milliseconds, or 0 when nothing has been recorded.
+     * @param percentile - between 0 and 100, e.g. 50, 95 or 99
+     */
+    public double getPercentileMs(double percentile) {
+        long count = mTotalCount.get();
+        if (count == 0)
+            return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts.get(i);
+            if (seen >= target)
+                return Math.min(bucketValue(i), mMaxMicros.get()) / 1e3;
+        }
+        return mMaxMicros.get() / 1e3;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            mCounts.set(i, 0);
+        mTotalCount.set(0);
+        mTotalMicros.set(0);
+        mMaxMicros.set(0);
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < LINEAR_LIMIT)
+            return (int) micros;
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        if (shift > MAX_SHIFT)
+            return BUCKET_COUNT - 1;
+        int top = (int) (micros >> shift);
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKET_COUNT + (top - SUB_BUCKET_COUNT);
+    }
+
+    // middle of the range of values counted in the bucket
+    static long bucketValue(int index) {
+        if (index < LINEAR_LIMIT)
+            return index;
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + 1;
+        long top = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return (top << shift) + (1L << (shift - 1));
+    }
+}
@@ -0,0 +1,69 @@
+package org.opencv.android;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * CPU implementation of the sketch preprocessing done on the GPU by
+ * CameraGLRendererBase: resize to a square model input, convert to gray,
+ * blur with a 21x21 Gaussian and color-dodge the gray image with its blur.
+ * The renderer falls back to it when the preprocessing shaders can't be built;
+ * it needs no GL context, so it can also be used for headless testing.
+ */
+public class SketchPreprocessor {
+
+    private static final Size BLUR_SIZE = new Size(21, 21);
+
+    private final Size mSize;
+    private final Mat mSmall;
+    private final Mat mGray;
+    private final Mat mBlurred;
+    private final Mat mSketch;
+
+    public SketchPreprocessor(int size) {
+        mSize = new Size(size, size);
+        mSmall = new Mat(size, size, CvType.CV_8UC4);
+        mGray = new Mat(size, size, CvType.CV_8UC1);
+        mBlurred = new Mat(size, size, CvType.CV_8UC1);
+        mSketch = new Mat(size, size, CvType.CV_8UC1);
+    }
+
+    public int getSize() {
+        return (int) mSize.width;
+    }
+
+    /**
+     * Preprocesses an RGBA frame of any size.
+     * @param rgba - the source frame
+     * @param dst - receives the size x size sketch as RGBA, matching the GPU read-back
+     */
+    public void process(Mat rgba, Mat dst) {
+        Imgproc.resize(rgba, mSmall, mSize, 0, 0, Imgproc.INTER_AREA);
+        Imgproc.cvtColor(mSmall, mGray, Imgproc.COLOR_RGBA2GRAY);
+        Imgproc.GaussianBlur(mGray, mBlurred, BLUR_SIZE, 0);
+        dodge(mGray, mBlurred, mSketch);
+        Imgproc.cvtColor(mSketch, dst, Imgproc.COLOR_GRAY2RGBA);
+    }
+
+    /**
+     * Color dodge of the gray image with its inverted, blurred inverse:
+     * gray * 256 / (255 - blur(255 - gray)). The blur kernels are normalized
+     * and linear, so 255 - blur(255 - gray) equals blur(gray) up to rounding,
+     * and the dodge is a single divide by the blur of the gray image itself.
+     *
+     * @param blurred - blur(gray), from any normalized blur
+     */
+    public static void dodge(Mat gray, Mat blurred, Mat dst) {
+        Core.divide(gray, blurred, dst, 256.0);
+    }
+
+    public void release() {
+        mSmall.release();
+        mGray.release();
+        mBlurred.release();
+        mSketch.release();
+    }
+}
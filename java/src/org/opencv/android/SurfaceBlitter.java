@@ -0,0 +1,75 @@
+package org.opencv.android;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import android.annotation.TargetApi;
+import android.media.Image;
+import android.media.ImageWriter;
+import android.view.Surface;
+
+/**
+ * Copies Mats straight into the buffers of an RGBA_8888 surface through an ImageWriter,
+ * the Java counterpart of locking an ANativeWindow. Unlike the Canvas path there is no
+ * intermediate Bitmap; the surface is expected to have the size of the Mats, the
+ * compositor scales it to the view.
+ */
+@TargetApi(23)
+class SurfaceBlitter {
+
+    private static final int MAX_IMAGES = 2;
+
+    private final ImageWriter mWriter;
+
+    SurfaceBlitter(Surface surface) {
+        mWriter = ImageWriter.newInstance(surface, MAX_IMAGES);
+    }
+
+    /**
+     * Copies a CV_8UC1, CV_8UC3 (RGB) or CV_8UC4 (RGBA) Mat to the next surface buffer and
+     * queues it for display.
+     * @return false if the surface buffer has a different size
+     */
+    boolean blit(Mat src) {
+        Image image = mWriter.dequeueInputImage();
+        if (image.getWidth() != src.cols() || image.getHeight() != src.rows()) {
+            image.close();
+            return false;
+        }
+
+        // one header with the row stride as step covers padded rows as well; the last row
+        // may end right after its pixels, as OpenCV never writes past a row
+        Image.Plane plane = image.getPlanes()[0];
+        Mat dst = new Mat(image.getHeight(), image.getWidth(), CvType.CV_8UC4, plane.getBuffer(), plane.getRowStride());
+        try {
+            copy(src, dst);
+        } catch (RuntimeException e) {
+            image.close();
+            throw e;
+        } finally {
+            dst.release();
+        }
+
+        mWriter.queueInputImage(image);
+        return true;
+    }
+
+    private static void copy(Mat src, Mat dst) {
+        switch (src.channels()) {
+        case 1:
+            Imgproc.cvtColor(src, dst, Imgproc.COLOR_GRAY2RGBA, 4);
+            break;
+        case 3:
+            Imgproc.cvtColor(src, dst, Imgproc.COLOR_RGB2RGBA, 4);
+            break;
+        default:
+            src.copyTo(dst);
+            break;
+        }
+    }
+
+    void release() {
+        mWriter.close();
+    }
+}
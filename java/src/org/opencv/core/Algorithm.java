@@ -8,7 +8,7 @@ import java.lang.String;
 // C++: class Algorithm
 //javadoc: Algorithm
 
-public class Algorithm {
+public class Algorithm implements AutoCloseable {
 
     protected final long nativeObj;
     protected Algorithm(long addr) { nativeObj = addr; }
@@ -88,6 +88,16 @@ public class Algorithm {
     // Unknown type 'Ptr_FileStorage' (I), skipping the function
 
 
+    /**
+     * Clears the algorithm state, see clear(), so that an Algorithm can be used in a
+     * try-with-resources statement. The native object itself is still deleted by the
+     * finalizer of the generated subclass.
+     */
+    @Override
+    public void close() {
+        clear();
+    }
+
     @Override
     protected void finalize() throws Throwable {
         delete(nativeObj);
@@ -0,0 +1,95 @@
+package org.opencv.core;
+
+/**
+ * Index based view of the matches of a MatOfDMatch, backed by one float array that is
+ * reused across load() calls. Unlike MatOfDMatch.toArray() it creates no DMatch objects.
+ */
+public class DMatchView {
+
+    private static final int STRIDE = 4;
+
+    private static final int QUERY_IDX = 0;
+    private static final int TRAIN_IDX = 1;
+    private static final int IMG_IDX   = 2;
+    private static final int DISTANCE  = 3;
+
+    private float[] mData = new float[0];
+    private int mCount;
+    private final float[] mSwap = new float[STRIDE];
+
+    public DMatchView() {
+    }
+
+    public DMatchView(MatOfDMatch m) {
+        load(m);
+    }
+
+    /**
+     * Copies the matches of m into this view, replacing its contents.
+     */
+    public DMatchView load(MatOfDMatch m) {
+        mCount = (int) m.total();
+        mData = FloatRecords.load(m, mData, mCount, STRIDE);
+        return this;
+    }
+
+    /**
+     * Writes the matches of this view, as sorted and filtered, into m.
+     */
+    public void store(MatOfDMatch m) {
+        FloatRecords.store(m, mData, mCount, CvType.CV_32FC(STRIDE));
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    public int   queryIdx(int i) { return (int) mData[check(i) + QUERY_IDX]; }
+    public int   trainIdx(int i) { return (int) mData[check(i) + TRAIN_IDX]; }
+    public int   imgIdx(int i)   { return (int) mData[check(i) + IMG_IDX]; }
+    public float distance(int i) { return mData[check(i) + DISTANCE]; }
+
+    /**
+     * Copies match i into dm, for code that still needs a DMatch.
+     */
+    public DMatch get(int i, DMatch dm) {
+        int o = check(i);
+        dm.queryIdx = (int) mData[o + QUERY_IDX];
+        dm.trainIdx = (int) mData[o + TRAIN_IDX];
+        dm.imgIdx   = (int) mData[o + IMG_IDX];
+        dm.distance = mData[o + DISTANCE];
+        return dm;
+    }
+
+    /**
+     * Sorts the matches in place, best (smallest distance) first.
+     */
+    public void sortByDistance() {
+        FloatRecords.sort(mData, mCount, STRIDE, DISTANCE, false, mSwap);
+    }
+
+    /**
+     * Removes the matches with a distance above maxDistance, keeping the order of the rest.
+     * @return the new size
+     */
+    public int filterByDistance(float maxDistance) {
+        mCount = FloatRecords.retain(mData, mCount, STRIDE, DISTANCE, Float.NEGATIVE_INFINITY, maxDistance);
+        return mCount;
+    }
+
+    /**
+     * Keeps the first n matches, e.g. the best ones after sortByDistance().
+     * @return the new size
+     */
+    public int retainTop(int n) {
+        if (n < mCount)
+            mCount = Math.max(n, 0);
+        return mCount;
+    }
+
+    private int check(int i) {
+        if (i < 0 || i >= mCount)
+            throw new IndexOutOfBoundsException("Index: " + i + ", size: " + mCount);
+        return i * STRIDE;
+    }
+}
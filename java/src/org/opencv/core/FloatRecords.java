@@ -0,0 +1,104 @@
+package org.opencv.core;
+
+/**
+ * In-place operations on fixed-size float records stored back to back in one array, as
+ * used by the structure views of MatOfKeyPoint and MatOfDMatch.
+ */
+final class FloatRecords {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private FloatRecords() {
+    }
+
+    /**
+     * Returns a float array that can hold count records, data itself if it is large enough.
+     * Its length stays a multiple of the stride, as Mat.get() and Mat.put() require.
+     */
+    static float[] ensureCapacity(float[] data, int count, int stride) {
+        if (data.length >= count * stride)
+            return data;
+        return new float[Math.max(count, data.length / stride * 2) * stride];
+    }
+
+    /**
+     * Reads count records from m, a column vector with stride channels, into data.
+     */
+    static float[] load(Mat m, float[] data, int count, int stride) {
+        data = ensureCapacity(data, count, stride);
+        if (count > 0)
+            m.get(0, 0, data); // copies only the rows the Mat has
+        return data;
+    }
+
+    /**
+     * Writes count records to m, reallocating it to count rows of the given type.
+     */
+    static void store(Mat m, float[] data, int count, int type) {
+        if (count == 0) {
+            m.release();
+            return;
+        }
+        m.create(count, 1, type);
+        m.put(0, 0, data); // copies only the rows the Mat has
+    }
+
+    /**
+     * Sorts the first count records by the float at key within each record.
+     * @param tmp - scratch space for one record, at least stride floats
+     */
+    static void sort(float[] data, int count, int stride, int key, boolean descending, float[] tmp) {
+        quickSort(data, 0, count - 1, stride, key, descending ? -1 : 1, tmp);
+    }
+
+    /**
+     * Moves the records whose key lies in [min, max] to the front, keeping their order.
+     * @return the number of records kept
+     */
+    static int retain(float[] data, int count, int stride, int key, float min, float max) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            float v = data[i * stride + key];
+            if (v >= min && v <= max) {
+                if (kept != i)
+                    System.arraycopy(data, i * stride, data, kept * stride, stride);
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    private static void quickSort(float[] data, int lo, int hi, int stride, int key, int sign, float[] tmp) {
+        while (hi - lo >= INSERTION_SORT_THRESHOLD) {
+            float pivot = sign * data[((lo + hi) >>> 1) * stride + key];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (sign * data[i * stride + key] < pivot) i++;
+                while (sign * data[j * stride + key] > pivot) j--;
+                if (i <= j) {
+                    swap(data, i, j, stride, tmp);
+                    i++;
+                    j--;
+                }
+            }
+            // recurse into the smaller part to bound the stack depth
+            if (j - lo < hi - i) {
+                quickSort(data, lo, j, stride, key, sign, tmp);
+                lo = i;
+            } else {
+                quickSort(data, i, hi, stride, key, sign, tmp);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && sign * data[(j - 1) * stride + key] > sign * data[j * stride + key]; j--)
+                swap(data, j - 1, j, stride, tmp);
+        }
+    }
+
+    private static void swap(float[] data, int a, int b, int stride, float[] tmp) {
+        System.arraycopy(data, a * stride, tmp, 0, stride);
+        System.arraycopy(data, b * stride, data, a * stride, stride);
+        System.arraycopy(tmp, 0, data, b * stride, stride);
+    }
+}
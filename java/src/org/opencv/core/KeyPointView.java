@@ -0,0 +1,115 @@
+package org.opencv.core;
+
+/**
+ * Index based view of the keypoints of a MatOfKeyPoint, backed by one float array that is
+ * reused across load() calls. Unlike MatOfKeyPoint.toArray() it creates no KeyPoint and
+ * Point objects, so per-frame keypoint handling does not allocate once the buffer is large
+ * enough.
+ *
+ * <pre>
+ * view.load(keypoints);
+ * view.sortByResponse();
+ * view.retainTop(500);
+ * for (int i = 0; i < view.size(); i++)
+ *     use(view.x(i), view.y(i));
+ * </pre>
+ */
+public class KeyPointView {
+
+    private static final int STRIDE = 7;
+
+    private static final int X        = 0;
+    private static final int Y        = 1;
+    private static final int SIZE     = 2;
+    private static final int ANGLE    = 3;
+    private static final int RESPONSE = 4;
+    private static final int OCTAVE   = 5;
+    private static final int CLASS_ID = 6;
+
+    private float[] mData = new float[0];
+    private int mCount;
+    private final float[] mSwap = new float[STRIDE];
+
+    public KeyPointView() {
+    }
+
+    public KeyPointView(MatOfKeyPoint m) {
+        load(m);
+    }
+
+    /**
+     * Copies the keypoints of m into this view, replacing its contents.
+     */
+    public KeyPointView load(MatOfKeyPoint m) {
+        mCount = (int) m.total();
+        mData = FloatRecords.load(m, mData, mCount, STRIDE);
+        return this;
+    }
+
+    /**
+     * Writes the keypoints of this view, as sorted and filtered, into m.
+     */
+    public void store(MatOfKeyPoint m) {
+        FloatRecords.store(m, mData, mCount, CvType.CV_32FC(STRIDE));
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    public float x(int i)        { return mData[check(i) + X]; }
+    public float y(int i)        { return mData[check(i) + Y]; }
+    // KeyPoint.size, the diameter of the keypoint neighbourhood
+    public float diameter(int i) { return mData[check(i) + SIZE]; }
+    public float angle(int i)    { return mData[check(i) + ANGLE]; }
+    public float response(int i) { return mData[check(i) + RESPONSE]; }
+    public int   octave(int i)   { return (int) mData[check(i) + OCTAVE]; }
+    public int   classId(int i)  { return (int) mData[check(i) + CLASS_ID]; }
+
+    /**
+     * Copies keypoint i into kp, for code that still needs a KeyPoint.
+     */
+    public KeyPoint get(int i, KeyPoint kp) {
+        int o = check(i);
+        kp.pt.x     = mData[o + X];
+        kp.pt.y     = mData[o + Y];
+        kp.size     = mData[o + SIZE];
+        kp.angle    = mData[o + ANGLE];
+        kp.response = mData[o + RESPONSE];
+        kp.octave   = (int) mData[o + OCTAVE];
+        kp.class_id = (int) mData[o + CLASS_ID];
+        return kp;
+    }
+
+    /**
+     * Sorts the keypoints in place, strongest response first.
+     */
+    public void sortByResponse() {
+        FloatRecords.sort(mData, mCount, STRIDE, RESPONSE, true, mSwap);
+    }
+
+    /**
+     * Removes the keypoints with a response below minResponse, keeping the order of the rest.
+     * @return the new size
+     */
+    public int filterByResponse(float minResponse) {
+        mCount = FloatRecords.retain(mData, mCount, STRIDE, RESPONSE, minResponse, Float.POSITIVE_INFINITY);
+        return mCount;
+    }
+
+    /**
+     * Keeps the first n keypoints, e.g. the strongest ones after sortByResponse().
+     * @return the new size
+     */
+    public int retainTop(int n) {
+        if (n < mCount)
+            mCount = Math.max(n, 0);
+        return mCount;
+    }
+
+    private int check(int i) {
+        if (i < 0 || i >= mCount)
+            throw new IndexOutOfBoundsException("Index: " + i + ", size: " + mCount);
+        return i * STRIDE;
+    }
+}
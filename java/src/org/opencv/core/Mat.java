@@ -1,18 +1,30 @@
 package org.opencv.core;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 
 // C++: class Mat
 //javadoc: Mat
-public class Mat {
+public class Mat implements AutoCloseable {
 
     public final long nativeObj;
 
+    // Mats that still held data when the garbage collector finalized them
+    private static final AtomicLong sFinalizedWithData = new AtomicLong();
+
+    // the direct buffer holding the data of Mats created over one, and of their views
+    private ByteBuffer mBuffer;
+    private long mBufferAddr;
+
     public Mat(long addr)
     {
         if (addr == 0)
             throw new java.lang.UnsupportedOperationException("Native object address is NULL");
         nativeObj = addr;
+        onCreated();
     }
 
     //
@@ -24,6 +36,7 @@ public class Mat {
     {
 
         nativeObj = n_Mat();
+        onCreated();
 
         return;
     }
@@ -37,6 +50,7 @@ public class Mat {
     {
 
         nativeObj = n_Mat(rows, cols, type);
+        onCreated();
 
         return;
     }
@@ -50,6 +64,30 @@ public class Mat {
     {
 
         nativeObj = n_Mat(rows, cols, type, data);
+        onCreated();
+        if (data.isDirect()) {
+            // keeps the buffer reachable for as long as the Mat uses it
+            mBuffer = data;
+            mBufferAddr = n_dataAddr(nativeObj);
+        }
+
+        return;
+    }
+
+    //
+    // C++: Mat::Mat(int rows, int cols, int type, void* data, size_t step)
+    //
+
+    // javadoc: Mat::Mat(rows, cols, type, data, step)
+    public Mat(int rows, int cols, int type, ByteBuffer data, long step)
+    {
+
+        nativeObj = n_Mat(rows, cols, type, data, step);
+        onCreated();
+        if (data.isDirect()) {
+            mBuffer = data;
+            mBufferAddr = n_dataAddr(nativeObj);
+        }
 
         return;
     }
@@ -63,6 +101,7 @@ public class Mat {
     {
 
         nativeObj = n_Mat(size.width, size.height, type);
+        onCreated();
 
         return;
     }
@@ -76,6 +115,7 @@ public class Mat {
     {
 
         nativeObj = n_Mat(rows, cols, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        onCreated();
 
         return;
     }
@@ -89,6 +129,7 @@ public class Mat {
     {
 
         nativeObj = n_Mat(size.width, size.height, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        onCreated();
 
         return;
     }
@@ -102,6 +143,8 @@ public class Mat {
     {
 
         nativeObj = n_Mat(m.nativeObj, rowRange.start, rowRange.end, colRange.start, colRange.end);
+        onCreated();
+        shareBuffer(m);
 
         return;
     }
@@ -111,6 +154,8 @@ public class Mat {
     {
 
         nativeObj = n_Mat(m.nativeObj, rowRange.start, rowRange.end);
+        onCreated();
+        shareBuffer(m);
 
         return;
     }
@@ -124,6 +169,8 @@ public class Mat {
     {
 
         nativeObj = n_Mat(m.nativeObj, roi.y, roi.y + roi.height, roi.x, roi.x + roi.width);
+        onCreated();
+        shareBuffer(m);
 
         return;
     }
@@ -137,6 +184,7 @@ public class Mat {
     {
 
         Mat retVal = new Mat(n_adjustROI(nativeObj, dtop, dbottom, dleft, dright));
+        retVal.shareBuffer(this);
 
         return retVal;
     }
@@ -230,6 +278,7 @@ public class Mat {
     {
 
         Mat retVal = new Mat(n_col(nativeObj, x));
+        retVal.shareBuffer(this);
 
         return retVal;
     }
@@ -243,6 +292,7 @@ public class Mat {
     {
 
         Mat retVal = new Mat(n_colRange(nativeObj, startcol, endcol));
+        retVal.shareBuffer(this);
 
         return retVal;
     }
@@ -256,6 +306,7 @@ public class Mat {
     {
 
         Mat retVal = new Mat(n_colRange(nativeObj, r.start, r.end));
+        retVal.shareBuffer(this);
 
         return retVal;
     }
@@ -418,6 +469,7 @@ public class Mat {
     {
 
         Mat retVal = new Mat(n_diag(nativeObj, d));
+        retVal.shareBuffer(this);
 
         return retVal;
     }
@@ -427,6 +479,7 @@ public class Mat {
     {
 
         Mat retVal = new Mat(n_diag(nativeObj, 0));
+        retVal.shareBuffer(this);
 
         return retVal;
     }
@@ -654,7 +707,10 @@ public class Mat {
     public void release()
     {
 
+        MatTracker.onReleased(this);
         n_release(nativeObj);
+        mBuffer = null;
+        mBufferAddr = 0;
 
         return;
     }
@@ -668,6 +724,7 @@ public class Mat {
     {
 
         Mat retVal = new Mat(n_reshape(nativeObj, cn, rows));
+        retVal.shareBuffer(this);
 
         return retVal;
     }
@@ -677,6 +734,7 @@ public class Mat {
     {
 
         Mat retVal = new Mat(n_reshape(nativeObj, cn));
+        retVal.shareBuffer(this);
 
         return retVal;
     }
@@ -689,6 +747,7 @@ public class Mat {
     public Mat reshape(int cn, int[] newshape)
     {
         Mat retVal = new Mat(n_reshape_1(nativeObj, cn, newshape.length, newshape));
+        retVal.shareBuffer(this);
 
         return retVal;
     }
@@ -702,6 +761,7 @@ public class Mat {
     {
 
         Mat retVal = new Mat(n_row(nativeObj, y));
+        retVal.shareBuffer(this);
 
         return retVal;
     }
@@ -715,6 +775,7 @@ public class Mat {
     {
 
         Mat retVal = new Mat(n_rowRange(nativeObj, startrow, endrow));
+        retVal.shareBuffer(this);
 
         return retVal;
     }
@@ -728,6 +789,7 @@ public class Mat {
     {
 
         Mat retVal = new Mat(n_rowRange(nativeObj, r.start, r.end));
+        retVal.shareBuffer(this);
 
         return retVal;
     }
@@ -850,6 +912,7 @@ public class Mat {
     {
 
         Mat retVal = new Mat(n_submat_rr(nativeObj, rowStart, rowEnd, colStart, colEnd));
+        retVal.shareBuffer(this);
 
         return retVal;
     }
@@ -863,6 +926,7 @@ public class Mat {
     {
 
         Mat retVal = new Mat(n_submat_rr(nativeObj, rowRange.start, rowRange.end, colRange.start, colRange.end));
+        retVal.shareBuffer(this);
 
         return retVal;
     }
@@ -876,6 +940,7 @@ public class Mat {
     {
 
         Mat retVal = new Mat(n_submat(nativeObj, roi.x, roi.y, roi.width, roi.height));
+        retVal.shareBuffer(this);
 
         return retVal;
     }
@@ -945,8 +1010,129 @@ public class Mat {
         return retVal;
     }
 
+    /**
+     * Releases the matrix data, like release(), so that a Mat can be used in a
+     * try-with-resources statement. The small native header is still deleted by the
+     * finalizer: nativeObj is passed straight to native code by every OpenCV function, so
+     * deleting it early would turn any later use of the Mat into a crash. A closed Mat is
+     * an empty Mat and may be used again.
+     */
+    @Override
+    public void close()
+    {
+        release();
+    }
+
+    /**
+     * Creates a Mat over a new direct ByteBuffer in native byte order, so that its data can
+     * be accessed without copies through asByteBuffer(), asFloatBuffer() and asIntBuffer().
+     * OpenCV functions keep writing into the buffer when the Mat is passed as an output with
+     * the same size and type; a different size or type makes OpenCV allocate new data.
+     */
+    public static Mat allocateDirect(int rows, int cols, int type)
+    {
+        long bytes = (long) rows * cols * CvType.ELEM_SIZE(type);
+        if (rows < 0 || cols < 0 || bytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("A " + rows + "x" + cols + " " + CvType.typeToString(type)
+                    + " Mat does not fit in a ByteBuffer");
+        return new Mat(rows, cols, type, ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder()));
+    }
+
+    /**
+     * Returns a view of the Mat data without copying it, in native byte order. Only Mats
+     * created over a direct ByteBuffer (see allocateDirect()) and their submatrices, rows,
+     * columns and reshapes have data that Java can address; for any other Mat, or after
+     * the Mat has been released or reallocated, an UnsupportedOperationException is thrown.
+     *
+     * The view starts at the first element and ends after the last one. Rows of a
+     * submatrix that is not continuous are step1(0) * elemSize1() bytes apart, with the
+     * data of the parent in between. The view keeps the memory alive on its own, but it
+     * stops reflecting the Mat once the Mat is released or its data reallocated.
+     * @param readOnly - whether to return a read-only view
+     */
+    public ByteBuffer asByteBuffer(boolean readOnly)
+    {
+        if (mBuffer == null)
+            throw new UnsupportedOperationException("Mat data is not held by a direct ByteBuffer");
+        long addr = dataAddr();
+        long span = isContinuous() || rows() <= 0 || cols() <= 0 ? total() * elemSize()
+                : (rows() - 1) * step1(0) * elemSize1() + cols() * elemSize();
+        long offset = addr - mBufferAddr;
+        if (addr == 0 || offset < 0 || offset + span > mBuffer.capacity())
+            throw new UnsupportedOperationException("Mat data has been released or reallocated");
+
+        ByteBuffer view = readOnly ? mBuffer.asReadOnlyBuffer() : mBuffer.duplicate();
+        view.limit((int) (offset + span)).position((int) offset);
+        // slices are always big-endian
+        return view.slice().order(ByteOrder.nativeOrder());
+    }
+
+    public ByteBuffer asByteBuffer()
+    {
+        return asByteBuffer(false);
+    }
+
+    /**
+     * Returns a view of the data of a CV_32F Mat, see asByteBuffer(). Rows of a
+     * non-continuous submatrix are step1(0) floats apart.
+     */
+    public FloatBuffer asFloatBuffer(boolean readOnly)
+    {
+        if (depth() != CvType.CV_32F)
+            throw new UnsupportedOperationException("Mat depth is not CV_32F: " + CvType.typeToString(type()));
+        return asByteBuffer(readOnly).asFloatBuffer();
+    }
+
+    public FloatBuffer asFloatBuffer()
+    {
+        return asFloatBuffer(false);
+    }
+
+    /**
+     * Returns a view of the data of a CV_32S Mat, see asByteBuffer(). Rows of a
+     * non-continuous submatrix are step1(0) ints apart.
+     */
+    public IntBuffer asIntBuffer(boolean readOnly)
+    {
+        if (depth() != CvType.CV_32S)
+            throw new UnsupportedOperationException("Mat depth is not CV_32S: " + CvType.typeToString(type()));
+        return asByteBuffer(readOnly).asIntBuffer();
+    }
+
+    public IntBuffer asIntBuffer()
+    {
+        return asIntBuffer(false);
+    }
+
+    // views created from a Mat share the buffer holding its data
+    private void shareBuffer(Mat m)
+    {
+        mBuffer = m.mBuffer;
+        mBufferAddr = m.mBufferAddr;
+    }
+
+    // registers a new Mat with the MatTracker, if enabled
+    private void onCreated()
+    {
+        MatTracker.onCreated(this);
+    }
+
+    /**
+     * Returns how many Mats were finalized while still holding data, i.e. were neither
+     * released nor closed. A growing count points at a native memory leak that only the
+     * garbage collector cleans up. Only counted while the MatTracker is enabled, as the
+     * check costs a native call for every finalized Mat.
+     */
+    public static long getFinalizedWithDataCount()
+    {
+        return sFinalizedWithData.get();
+    }
+
     @Override
     protected void finalize() throws Throwable {
+        if (MatTracker.isEnabled() && n_dataAddr(nativeObj) != 0)
+            sFinalizedWithData.incrementAndGet();
+        MatTracker.onDeleted(this);
         n_delete(nativeObj);
         super.finalize();
     }
@@ -1158,6 +1344,9 @@ public class Mat {
     // C++: Mat::Mat(int rows, int cols, int type, void* data)
     private static native long n_Mat(int rows, int cols, int type, ByteBuffer data);
 
+    // C++: Mat::Mat(int rows, int cols, int type, void* data, size_t step)
+    private static native long n_Mat(int rows, int cols, int type, ByteBuffer data, long step);
+
     // C++: Mat::Mat(Size size, int type)
     private static native long n_Mat(double size_width, double size_height, int type);
 
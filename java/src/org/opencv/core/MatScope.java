@@ -0,0 +1,135 @@
+package org.opencv.core;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Arena for Mats: every Mat handed to track() is closed (see Mat.close()) when the scope
+ * is closed. Only tracked Mats are affected, so Mats that other code allocates while the
+ * scope is open, such as the caches kept by camera frames, are left alone. Scopes nest
+ * and must be closed on the thread that opened them. A result that must outlive the scope
+ * is handed to the enclosing scope (or to nobody) with keep().
+ *
+ * <pre>
+ * MatScope scope = MatScope.open();
+ * try {
+ *     Mat roi = scope.track(frame.submat(rect));
+ *     Mat result = scope.track(new Mat());
+ *     ...
+ *     return scope.keep(result);
+ * } finally {
+ *     scope.close();
+ * }
+ * </pre>
+ */
+public class MatScope implements AutoCloseable {
+
+    private static final ThreadLocal<MatScope> sCurrent = new ThreadLocal<MatScope>();
+    private static final AtomicInteger sOpenScopes = new AtomicInteger();
+    private static final AtomicLong sReleasedCount = new AtomicLong();
+
+    private final MatScope mParent;
+    private final Thread mThread;
+    private final ArrayList<Mat> mMats = new ArrayList<Mat>();
+    private boolean mClosed;
+
+    private MatScope(MatScope parent) {
+        mParent = parent;
+        mThread = Thread.currentThread();
+    }
+
+    /**
+     * Opens a scope on the calling thread; it must be closed on the same thread.
+     */
+    public static MatScope open() {
+        MatScope scope = new MatScope(sCurrent.get());
+        sCurrent.set(scope);
+        sOpenScopes.incrementAndGet();
+        return scope;
+    }
+
+    /**
+     * Adds a Mat to this scope, so that it is closed with it.
+     * @return the given Mat
+     */
+    public <T extends Mat> T track(T m) {
+        if (mClosed)
+            throw new IllegalStateException("MatScope is closed");
+        mMats.add(m);
+        return m;
+    }
+
+    /**
+     * Takes a Mat out of this scope so that it is not released on close. It moves to the
+     * enclosing scope if there is one; otherwise the caller owns it.
+     * @return the given Mat
+     */
+    public <T extends Mat> T keep(T m) {
+        for (int i = mMats.size() - 1; i >= 0; i--) {
+            if (mMats.get(i) == m) {
+                mMats.remove(i);
+                if (mParent != null && !mParent.mClosed)
+                    mParent.mMats.add(m);
+                break;
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Returns the number of Mats that will be released when the scope is closed.
+     */
+    public int getTrackedCount() {
+        return mMats.size();
+    }
+
+    /**
+     * Closes all Mats tracked by this scope and not kept, newest first, and makes the
+     * enclosing scope current again. Inner scopes still open are closed first, innermost
+     * first, so that none of them is left behind on the thread.
+     */
+    @Override
+    public void close() {
+        if (mClosed)
+            return;
+        if (Thread.currentThread() != mThread)
+            throw new IllegalStateException("MatScope must be closed on the thread that opened it");
+        MatScope inner = sCurrent.get();
+        while (inner != this) {
+            inner.closeMats();
+            inner = inner.mParent;
+        }
+        closeMats();
+
+        // scopes are closed innermost first, so the enclosing one is still open
+        if (mParent != null)
+            sCurrent.set(mParent);
+        else
+            sCurrent.remove();
+    }
+
+    private void closeMats() {
+        mClosed = true;
+        for (int i = mMats.size() - 1; i >= 0; i--)
+            mMats.get(i).close();
+        sReleasedCount.addAndGet(mMats.size());
+        mMats.clear();
+        sOpenScopes.decrementAndGet();
+    }
+
+    /**
+     * Returns the number of Mats released by closing scopes so far, in all threads.
+     */
+    public static long getReleasedCount() {
+        return sReleasedCount.get();
+    }
+
+    /**
+     * Returns the number of scopes currently open, in all threads. A count that keeps
+     * growing means scopes are not being closed.
+     */
+    public static int getOpenCount() {
+        return sOpenScopes.get();
+    }
+}
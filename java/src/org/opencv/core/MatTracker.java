@@ -0,0 +1,230 @@
+package org.opencv.core;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Opt-in accounting of native Mat memory, for finding leaks during development. While
+ * enabled, every Mat constructed records its allocation site (the first caller outside
+ * org.opencv.core) and stack trace, which makes construction much slower; while disabled
+ * the cost is one volatile read per Mat.
+ *
+ * Sizes are total() * elemSize(), sampled when a Mat is created or released and whenever
+ * statistics are read, since most Mats get their data later as an output argument.
+ * Submatrices share their parent's data and count as 0 bytes. Mats created before enable()
+ * are not tracked.
+ */
+public final class MatTracker {
+
+    private static volatile boolean sEnabled;
+
+    private static final Map<Long, Record> sLive = new HashMap<Long, Record>();
+    private static long sLiveBytes;
+    private static int sHighWaterCount;
+    private static long sHighWaterBytes;
+
+    private static final class Record {
+        final WeakReference<Mat> mat;
+        final String site;
+        final Throwable trace;
+        long bytes;
+
+        Record(Mat m, String site, Throwable trace) {
+            this.mat = new WeakReference<Mat>(m);
+            this.site = site;
+            this.trace = trace;
+        }
+    }
+
+    /** Per allocation site and type totals of live Mats, see getLiveBySite(). */
+    public static final class SiteStats {
+        public final String site;
+        public final String type;
+        public int count;
+        public long bytes;
+
+        SiteStats(String site, String type) {
+            this.site = site;
+            this.type = type;
+        }
+
+        @Override
+        public String toString() {
+            return site + " " + type + ": " + count + " Mats, " + bytes + " bytes";
+        }
+    }
+
+    private MatTracker() {
+    }
+
+    public static void enable() {
+        sEnabled = true;
+    }
+
+    /**
+     * Stops tracking new Mats and forgets the tracked ones; the high-water marks are kept.
+     */
+    public static synchronized void disable() {
+        sEnabled = false;
+        sLive.clear();
+        sLiveBytes = 0;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    static void onCreated(Mat m) {
+        if (!sEnabled)
+            return;
+        Throwable trace = new Throwable("Mat allocated here");
+        Record record = new Record(m, allocationSite(trace), trace);
+        synchronized (MatTracker.class) {
+            record.bytes = bytesOf(m);
+            sLive.put(m.nativeObj, record);
+            sLiveBytes += record.bytes;
+            updateHighWater();
+        }
+    }
+
+    static void onReleased(Mat m) {
+        if (!sEnabled)
+            return;
+        synchronized (MatTracker.class) {
+            Record record = sLive.get(m.nativeObj);
+            if (record != null) {
+                sLiveBytes -= record.bytes;
+                record.bytes = 0;
+            }
+        }
+    }
+
+    static void onDeleted(Mat m) {
+        if (!sEnabled)
+            return;
+        synchronized (MatTracker.class) {
+            Record record = sLive.remove(m.nativeObj);
+            if (record != null)
+                sLiveBytes -= record.bytes;
+        }
+    }
+
+    public static synchronized int getLiveCount() {
+        return sLive.size();
+    }
+
+    public static synchronized long getLiveBytes() {
+        refresh();
+        return sLiveBytes;
+    }
+
+    public static synchronized int getHighWaterCount() {
+        return sHighWaterCount;
+    }
+
+    public static synchronized long getHighWaterBytes() {
+        refresh();
+        return sHighWaterBytes;
+    }
+
+    public static synchronized void resetHighWater() {
+        refresh();
+        sHighWaterCount = sLive.size();
+        sHighWaterBytes = sLiveBytes;
+    }
+
+    /**
+     * Returns the live Mats grouped by allocation site and type, largest first.
+     */
+    public static synchronized List<SiteStats> getLiveBySite() {
+        refresh();
+        Map<String, SiteStats> bySite = new HashMap<String, SiteStats>();
+        for (Record record : sLive.values()) {
+            Mat m = record.mat.get();
+            String type = m != null ? CvType.typeToString(m.type()) : "?";
+            String key = record.site + '\0' + type;
+            SiteStats stats = bySite.get(key);
+            if (stats == null) {
+                stats = new SiteStats(record.site, type);
+                bySite.put(key, stats);
+            }
+            stats.count++;
+            stats.bytes += record.bytes;
+        }
+        List<SiteStats> result = new ArrayList<SiteStats>(bySite.values());
+        Collections.sort(result, new Comparator<SiteStats>() {
+            @Override
+            public int compare(SiteStats a, SiteStats b) {
+                return a.bytes != b.bytes ? (a.bytes > b.bytes ? -1 : 1) : b.count - a.count;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Describes the live Mats that still hold data, with the stack trace of their allocation.
+     * @param max - the maximum number of Mats to describe
+     */
+    public static synchronized String dumpUnreleased(int max) {
+        refresh();
+        StringBuilder sb = new StringBuilder();
+        int unreleased = 0;
+        for (Record record : sLive.values()) {
+            Mat m = record.mat.get();
+            if (m == null || m.dataAddr() == 0)
+                continue;
+            if (unreleased++ >= max)
+                continue;
+            sb.append(m).append(", ").append(record.bytes).append(" bytes\n");
+            for (StackTraceElement element : record.trace.getStackTrace())
+                sb.append("    at ").append(element).append('\n');
+        }
+        sb.insert(0, unreleased + " unreleased Mats, " + sLiveBytes + " bytes\n");
+        return sb.toString();
+    }
+
+    // resamples the sizes and drops Mats that were collected without being finalized yet
+    private static void refresh() {
+        long total = 0;
+        Iterator<Record> it = sLive.values().iterator();
+        while (it.hasNext()) {
+            Record record = it.next();
+            Mat m = record.mat.get();
+            if (m == null) {
+                it.remove();
+                continue;
+            }
+            record.bytes = bytesOf(m);
+            total += record.bytes;
+        }
+        sLiveBytes = total;
+        updateHighWater();
+    }
+
+    private static void updateHighWater() {
+        if (sLive.size() > sHighWaterCount)
+            sHighWaterCount = sLive.size();
+        if (sLiveBytes > sHighWaterBytes)
+            sHighWaterBytes = sLiveBytes;
+    }
+
+    private static long bytesOf(Mat m) {
+        if (m.dataAddr() == 0 || m.isSubmatrix())
+            return 0;
+        return m.total() * m.elemSize();
+    }
+
+    private static String allocationSite(Throwable trace) {
+        for (StackTraceElement element : trace.getStackTrace()) {
+            if (!element.getClassName().startsWith("org.opencv.core."))
+                return element.toString();
+        }
+        return "unknown";
+    }
+}
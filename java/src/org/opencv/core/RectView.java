@@ -0,0 +1,90 @@
+package org.opencv.core;
+
+/**
+ * Index based view of the rectangles of a MatOfRect, backed by one int array that is
+ * reused across load() calls. Unlike MatOfRect.toArray() it creates no Rect objects.
+ */
+public class RectView {
+
+    private static final int STRIDE = 4;
+
+    private int[] mData = new int[0];
+    private int mCount;
+
+    public RectView() {
+    }
+
+    public RectView(MatOfRect m) {
+        load(m);
+    }
+
+    /**
+     * Copies the rectangles of m into this view, replacing its contents.
+     */
+    public RectView load(MatOfRect m) {
+        mCount = (int) m.total();
+        if (mData.length < mCount * STRIDE)
+            mData = new int[Math.max(mCount, mData.length / STRIDE * 2) * STRIDE];
+        if (mCount > 0)
+            m.get(0, 0, mData); // copies only the rows the Mat has
+        return this;
+    }
+
+    /**
+     * Writes the rectangles of this view into m.
+     */
+    public void store(MatOfRect m) {
+        if (mCount == 0) {
+            m.release();
+            return;
+        }
+        m.create(mCount, 1, CvType.CV_32SC4);
+        m.put(0, 0, mData);
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    public int x(int i)      { return mData[check(i)]; }
+    public int y(int i)      { return mData[check(i) + 1]; }
+    public int width(int i)  { return mData[check(i) + 2]; }
+    public int height(int i) { return mData[check(i) + 3]; }
+    public int area(int i)   { int o = check(i); return mData[o + 2] * mData[o + 3]; }
+
+    /**
+     * Copies rectangle i into r, for code that still needs a Rect.
+     */
+    public Rect get(int i, Rect r) {
+        int o = check(i);
+        r.x      = mData[o];
+        r.y      = mData[o + 1];
+        r.width  = mData[o + 2];
+        r.height = mData[o + 3];
+        return r;
+    }
+
+    /**
+     * Removes the rectangles smaller than minArea, keeping the order of the rest.
+     * @return the new size
+     */
+    public int filterByArea(int minArea) {
+        int kept = 0;
+        for (int i = 0; i < mCount; i++) {
+            int o = i * STRIDE;
+            if (mData[o + 2] * mData[o + 3] >= minArea) {
+                if (kept != i)
+                    System.arraycopy(mData, o, mData, kept * STRIDE, STRIDE);
+                kept++;
+            }
+        }
+        mCount = kept;
+        return mCount;
+    }
+
+    private int check(int i) {
+        if (i < 0 || i >= mCount)
+            throw new IndexOutOfBoundsException("Index: " + i + ", size: " + mCount);
+        return i * STRIDE;
+    }
+}
@@ -1,5 +1,9 @@
 package org.opencv.utils;
 
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -809,4 +813,682 @@ public class Converters {
             rs.add(new RotatedRect(new Point(buff[5 * i], buff[5 * i + 1]), new Size(buff[5 * i + 2], buff[5 * i + 3]), buff[5 * i + 4]));
         }
     }
+
+    //
+    // Primitive fast paths: one bulk put/get and no boxing. The Mat destination variants
+    // reuse dst when it already has the right size and type, the array variants reuse dst
+    // when it has exactly the right length. The Buffer variants read or write the
+    // remaining elements and advance the buffer position, as relative bulk operations do.
+    //
+
+    public static Mat vector_float_to_Mat(float[] data) {
+        Mat res = new Mat();
+        vector_float_to_Mat(data, res);
+        return res;
+    }
+
+    public static void vector_float_to_Mat(float[] data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_32FC1, dst);
+    }
+
+    public static void vector_float_to_Mat(FloatBuffer data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_32FC1, dst);
+    }
+
+    public static float[] Mat_to_vector_float(Mat m, float[] dst) {
+        return Mat_to_flat(m, CvType.CV_32FC1, "CvType.CV_32FC1", dst);
+    }
+
+    public static void Mat_to_vector_float(Mat m, FloatBuffer dst) {
+        Mat_to_flat(m, CvType.CV_32FC1, "CvType.CV_32FC1", dst);
+    }
+
+    public static Mat vector_int_to_Mat(int[] data) {
+        Mat res = new Mat();
+        vector_int_to_Mat(data, res);
+        return res;
+    }
+
+    public static void vector_int_to_Mat(int[] data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_32SC1, dst);
+    }
+
+    public static void vector_int_to_Mat(IntBuffer data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_32SC1, dst);
+    }
+
+    public static int[] Mat_to_vector_int(Mat m, int[] dst) {
+        return Mat_to_flat(m, CvType.CV_32SC1, "CvType.CV_32SC1", dst);
+    }
+
+    public static void Mat_to_vector_int(Mat m, IntBuffer dst) {
+        Mat_to_flat(m, CvType.CV_32SC1, "CvType.CV_32SC1", dst);
+    }
+
+    public static Mat vector_double_to_Mat(double[] data) {
+        Mat res = new Mat();
+        vector_double_to_Mat(data, res);
+        return res;
+    }
+
+    public static void vector_double_to_Mat(double[] data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_64FC1, dst);
+    }
+
+    public static void vector_double_to_Mat(DoubleBuffer data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_64FC1, dst);
+    }
+
+    public static double[] Mat_to_vector_double(Mat m, double[] dst) {
+        return Mat_to_flat(m, CvType.CV_64FC1, "CvType.CV_64FC1", dst);
+    }
+
+    public static void Mat_to_vector_double(Mat m, DoubleBuffer dst) {
+        Mat_to_flat(m, CvType.CV_64FC1, "CvType.CV_64FC1", dst);
+    }
+
+    public static Mat vector_uchar_to_Mat(byte[] data) {
+        Mat res = new Mat();
+        vector_uchar_to_Mat(data, res);
+        return res;
+    }
+
+    public static void vector_uchar_to_Mat(byte[] data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_8UC1, dst);
+    }
+
+    public static void vector_uchar_to_Mat(ByteBuffer data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_8UC1, dst);
+    }
+
+    public static byte[] Mat_to_vector_uchar(Mat m, byte[] dst) {
+        return Mat_to_flat(m, CvType.CV_8UC1, "CvType.CV_8UC1", dst);
+    }
+
+    public static void Mat_to_vector_uchar(Mat m, ByteBuffer dst) {
+        Mat_to_flat(m, CvType.CV_8UC1, "CvType.CV_8UC1", dst);
+    }
+
+    public static Mat vector_char_to_Mat(byte[] data) {
+        Mat res = new Mat();
+        vector_char_to_Mat(data, res);
+        return res;
+    }
+
+    public static void vector_char_to_Mat(byte[] data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_8SC1, dst);
+    }
+
+    public static void vector_char_to_Mat(ByteBuffer data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_8SC1, dst);
+    }
+
+    public static byte[] Mat_to_vector_char(Mat m, byte[] dst) {
+        return Mat_to_flat(m, CvType.CV_8SC1, "CvType.CV_8SC1", dst);
+    }
+
+    public static void Mat_to_vector_char(Mat m, ByteBuffer dst) {
+        Mat_to_flat(m, CvType.CV_8SC1, "CvType.CV_8SC1", dst);
+    }
+
+    //
+    // Flat variants of the struct conversions. Each element takes one value per Mat
+    // channel, in this order:
+    //   Point, Point2f, Point2d: x, y
+    //   Point3i, Point3f, Point3d: x, y, z
+    //   Rect, Rect2d: x, y, width, height
+    //   RotatedRect: center.x, center.y, size.width, size.height, angle
+    //   KeyPoint: pt.x, pt.y, size, angle, response, octave, class_id
+    //   DMatch: queryIdx, trainIdx, imgIdx, distance
+    // The length of an array or of the remaining buffer must be a multiple of that count.
+    //
+
+    public static Mat vector_Point_to_Mat(int[] data) {
+        Mat res = new Mat();
+        vector_Point_to_Mat(data, res);
+        return res;
+    }
+
+    public static void vector_Point_to_Mat(int[] data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_32SC2, dst);
+    }
+
+    public static void vector_Point_to_Mat(IntBuffer data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_32SC2, dst);
+    }
+
+    public static int[] Mat_to_vector_Point(Mat m, int[] dst) {
+        return Mat_to_flat(m, CvType.CV_32SC2, "CvType.CV_32SC2", dst);
+    }
+
+    public static void Mat_to_vector_Point(Mat m, IntBuffer dst) {
+        Mat_to_flat(m, CvType.CV_32SC2, "CvType.CV_32SC2", dst);
+    }
+
+    public static Mat vector_Point2f_to_Mat(float[] data) {
+        Mat res = new Mat();
+        vector_Point2f_to_Mat(data, res);
+        return res;
+    }
+
+    public static void vector_Point2f_to_Mat(float[] data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_32FC2, dst);
+    }
+
+    public static void vector_Point2f_to_Mat(FloatBuffer data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_32FC2, dst);
+    }
+
+    public static float[] Mat_to_vector_Point2f(Mat m, float[] dst) {
+        return Mat_to_flat(m, CvType.CV_32FC2, "CvType.CV_32FC2", dst);
+    }
+
+    public static void Mat_to_vector_Point2f(Mat m, FloatBuffer dst) {
+        Mat_to_flat(m, CvType.CV_32FC2, "CvType.CV_32FC2", dst);
+    }
+
+    public static Mat vector_Point2d_to_Mat(double[] data) {
+        Mat res = new Mat();
+        vector_Point2d_to_Mat(data, res);
+        return res;
+    }
+
+    public static void vector_Point2d_to_Mat(double[] data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_64FC2, dst);
+    }
+
+    public static void vector_Point2d_to_Mat(DoubleBuffer data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_64FC2, dst);
+    }
+
+    public static double[] Mat_to_vector_Point2d(Mat m, double[] dst) {
+        return Mat_to_flat(m, CvType.CV_64FC2, "CvType.CV_64FC2", dst);
+    }
+
+    public static void Mat_to_vector_Point2d(Mat m, DoubleBuffer dst) {
+        Mat_to_flat(m, CvType.CV_64FC2, "CvType.CV_64FC2", dst);
+    }
+
+    public static Mat vector_Point3i_to_Mat(int[] data) {
+        Mat res = new Mat();
+        vector_Point3i_to_Mat(data, res);
+        return res;
+    }
+
+    public static void vector_Point3i_to_Mat(int[] data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_32SC3, dst);
+    }
+
+    public static void vector_Point3i_to_Mat(IntBuffer data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_32SC3, dst);
+    }
+
+    public static int[] Mat_to_vector_Point3i(Mat m, int[] dst) {
+        return Mat_to_flat(m, CvType.CV_32SC3, "CvType.CV_32SC3", dst);
+    }
+
+    public static void Mat_to_vector_Point3i(Mat m, IntBuffer dst) {
+        Mat_to_flat(m, CvType.CV_32SC3, "CvType.CV_32SC3", dst);
+    }
+
+    public static Mat vector_Point3f_to_Mat(float[] data) {
+        Mat res = new Mat();
+        vector_Point3f_to_Mat(data, res);
+        return res;
+    }
+
+    public static void vector_Point3f_to_Mat(float[] data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_32FC3, dst);
+    }
+
+    public static void vector_Point3f_to_Mat(FloatBuffer data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_32FC3, dst);
+    }
+
+    public static float[] Mat_to_vector_Point3f(Mat m, float[] dst) {
+        return Mat_to_flat(m, CvType.CV_32FC3, "CvType.CV_32FC3", dst);
+    }
+
+    public static void Mat_to_vector_Point3f(Mat m, FloatBuffer dst) {
+        Mat_to_flat(m, CvType.CV_32FC3, "CvType.CV_32FC3", dst);
+    }
+
+    public static Mat vector_Point3d_to_Mat(double[] data) {
+        Mat res = new Mat();
+        vector_Point3d_to_Mat(data, res);
+        return res;
+    }
+
+    public static void vector_Point3d_to_Mat(double[] data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_64FC3, dst);
+    }
+
+    public static void vector_Point3d_to_Mat(DoubleBuffer data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_64FC3, dst);
+    }
+
+    public static double[] Mat_to_vector_Point3d(Mat m, double[] dst) {
+        return Mat_to_flat(m, CvType.CV_64FC3, "CvType.CV_64FC3", dst);
+    }
+
+    public static void Mat_to_vector_Point3d(Mat m, DoubleBuffer dst) {
+        Mat_to_flat(m, CvType.CV_64FC3, "CvType.CV_64FC3", dst);
+    }
+
+    public static Mat vector_Rect_to_Mat(int[] data) {
+        Mat res = new Mat();
+        vector_Rect_to_Mat(data, res);
+        return res;
+    }
+
+    public static void vector_Rect_to_Mat(int[] data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_32SC4, dst);
+    }
+
+    public static void vector_Rect_to_Mat(IntBuffer data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_32SC4, dst);
+    }
+
+    public static int[] Mat_to_vector_Rect(Mat m, int[] dst) {
+        return Mat_to_flat(m, CvType.CV_32SC4, "CvType.CV_32SC4", dst);
+    }
+
+    public static void Mat_to_vector_Rect(Mat m, IntBuffer dst) {
+        Mat_to_flat(m, CvType.CV_32SC4, "CvType.CV_32SC4", dst);
+    }
+
+    public static Mat vector_Rect2d_to_Mat(double[] data) {
+        Mat res = new Mat();
+        vector_Rect2d_to_Mat(data, res);
+        return res;
+    }
+
+    public static void vector_Rect2d_to_Mat(double[] data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_64FC4, dst);
+    }
+
+    public static void vector_Rect2d_to_Mat(DoubleBuffer data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_64FC4, dst);
+    }
+
+    public static double[] Mat_to_vector_Rect2d(Mat m, double[] dst) {
+        return Mat_to_flat(m, CvType.CV_64FC4, "CvType.CV_64FC4", dst);
+    }
+
+    public static void Mat_to_vector_Rect2d(Mat m, DoubleBuffer dst) {
+        Mat_to_flat(m, CvType.CV_64FC4, "CvType.CV_64FC4", dst);
+    }
+
+    public static Mat vector_RotatedRect_to_Mat(float[] data) {
+        Mat res = new Mat();
+        vector_RotatedRect_to_Mat(data, res);
+        return res;
+    }
+
+    public static void vector_RotatedRect_to_Mat(float[] data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_32FC(5), dst);
+    }
+
+    public static void vector_RotatedRect_to_Mat(FloatBuffer data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_32FC(5), dst);
+    }
+
+    public static float[] Mat_to_vector_RotatedRect(Mat m, float[] dst) {
+        return Mat_to_flat(m, CvType.CV_32FC(5), "CvType.CV_32FC5", dst);
+    }
+
+    public static void Mat_to_vector_RotatedRect(Mat m, FloatBuffer dst) {
+        Mat_to_flat(m, CvType.CV_32FC(5), "CvType.CV_32FC5", dst);
+    }
+
+    public static Mat vector_KeyPoint_to_Mat(double[] data) {
+        Mat res = new Mat();
+        vector_KeyPoint_to_Mat(data, res);
+        return res;
+    }
+
+    public static void vector_KeyPoint_to_Mat(double[] data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_64FC(7), dst);
+    }
+
+    public static void vector_KeyPoint_to_Mat(DoubleBuffer data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_64FC(7), dst);
+    }
+
+    public static double[] Mat_to_vector_KeyPoint(Mat m, double[] dst) {
+        return Mat_to_flat(m, CvType.CV_64FC(7), "CvType.CV_64FC(7)", dst);
+    }
+
+    public static void Mat_to_vector_KeyPoint(Mat m, DoubleBuffer dst) {
+        Mat_to_flat(m, CvType.CV_64FC(7), "CvType.CV_64FC(7)", dst);
+    }
+
+    public static Mat vector_DMatch_to_Mat(double[] data) {
+        Mat res = new Mat();
+        vector_DMatch_to_Mat(data, res);
+        return res;
+    }
+
+    public static void vector_DMatch_to_Mat(double[] data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_64FC4, dst);
+    }
+
+    public static void vector_DMatch_to_Mat(DoubleBuffer data, Mat dst) {
+        flat_to_Mat(data, CvType.CV_64FC4, dst);
+    }
+
+    public static double[] Mat_to_vector_DMatch(Mat m, double[] dst) {
+        return Mat_to_flat(m, CvType.CV_64FC4, "CvType.CV_64FC4", dst);
+    }
+
+    public static void Mat_to_vector_DMatch(Mat m, DoubleBuffer dst) {
+        Mat_to_flat(m, CvType.CV_64FC4, "CvType.CV_64FC4", dst);
+    }
+
+    private static int checkColumnVector(Mat m, int type, String typeName) {
+        if ((type != m.type() || m.cols() != 1) && !m.empty())
+            throw new java.lang.IllegalArgumentException(
+                    typeName + " != m.type() ||  m.cols()!=1\n" + m);
+        return m.rows();
+    }
+
+    private static int flatCount(int length, int channels) {
+        if (length % channels != 0)
+            throw new java.lang.IllegalArgumentException(
+                    "Data length " + length + " is not a multiple of " + channels + " values per element");
+        return length / channels;
+    }
+
+    private static void flat_to_Mat(float[] data, int type, Mat dst) {
+        int count = (data != null) ? flatCount(data.length, CvType.channels(type)) : 0;
+        if (count > 0) {
+            dst.create(count, 1, type);
+            dst.put(0, 0, data);
+        } else {
+            dst.release();
+        }
+    }
+
+    private static void flat_to_Mat(FloatBuffer data, int type, Mat dst) {
+        int channels = CvType.channels(type);
+        int length = data.remaining();
+        int count = flatCount(length, channels);
+        if (count == 0) {
+            dst.release();
+            return;
+        }
+        dst.create(count, 1, type);
+        if (data.hasArray() && data.arrayOffset() + data.position() == 0
+                && data.array().length % channels == 0) {
+            // put() stops at the end of the Mat, so nothing past the limit is read
+            dst.put(0, 0, data.array());
+            data.position(length);
+        } else {
+            float[] buff = floatScratch(length);
+            data.get(buff, 0, length);
+            dst.put(0, 0, buff);
+        }
+    }
+
+    private static float[] Mat_to_flat(Mat m, int type, String typeName, float[] dst) {
+        int length = checkColumnVector(m, type, typeName) * CvType.channels(type);
+        float[] res = (dst != null && dst.length == length) ? dst : new float[length];
+        if (length > 0)
+            m.get(0, 0, res);
+        return res;
+    }
+
+    private static void Mat_to_flat(Mat m, int type, String typeName, FloatBuffer dst) {
+        int channels = CvType.channels(type);
+        int length = checkColumnVector(m, type, typeName) * channels;
+        if (length == 0)
+            return;
+        if (dst.remaining() < length)
+            throw new java.nio.BufferOverflowException();
+        if (dst.hasArray() && dst.arrayOffset() + dst.position() == 0
+                && dst.array().length % channels == 0) {
+            // get() stops at the end of the Mat, so nothing past length is written
+            m.get(0, 0, dst.array());
+            dst.position(length);
+        } else {
+            float[] buff = floatScratch(length);
+            m.get(0, 0, buff);
+            dst.put(buff, 0, length);
+        }
+    }
+
+    private static void flat_to_Mat(int[] data, int type, Mat dst) {
+        int count = (data != null) ? flatCount(data.length, CvType.channels(type)) : 0;
+        if (count > 0) {
+            dst.create(count, 1, type);
+            dst.put(0, 0, data);
+        } else {
+            dst.release();
+        }
+    }
+
+    private static void flat_to_Mat(IntBuffer data, int type, Mat dst) {
+        int channels = CvType.channels(type);
+        int length = data.remaining();
+        int count = flatCount(length, channels);
+        if (count == 0) {
+            dst.release();
+            return;
+        }
+        dst.create(count, 1, type);
+        if (data.hasArray() && data.arrayOffset() + data.position() == 0
+                && data.array().length % channels == 0) {
+            // put() stops at the end of the Mat, so nothing past the limit is read
+            dst.put(0, 0, data.array());
+            data.position(length);
+        } else {
+            int[] buff = intScratch(length);
+            data.get(buff, 0, length);
+            dst.put(0, 0, buff);
+        }
+    }
+
+    private static int[] Mat_to_flat(Mat m, int type, String typeName, int[] dst) {
+        int length = checkColumnVector(m, type, typeName) * CvType.channels(type);
+        int[] res = (dst != null && dst.length == length) ? dst : new int[length];
+        if (length > 0)
+            m.get(0, 0, res);
+        return res;
+    }
+
+    private static void Mat_to_flat(Mat m, int type, String typeName, IntBuffer dst) {
+        int channels = CvType.channels(type);
+        int length = checkColumnVector(m, type, typeName) * channels;
+        if (length == 0)
+            return;
+        if (dst.remaining() < length)
+            throw new java.nio.BufferOverflowException();
+        if (dst.hasArray() && dst.arrayOffset() + dst.position() == 0
+                && dst.array().length % channels == 0) {
+            // get() stops at the end of the Mat, so nothing past length is written
+            m.get(0, 0, dst.array());
+            dst.position(length);
+        } else {
+            int[] buff = intScratch(length);
+            m.get(0, 0, buff);
+            dst.put(buff, 0, length);
+        }
+    }
+
+    private static void flat_to_Mat(double[] data, int type, Mat dst) {
+        int count = (data != null) ? flatCount(data.length, CvType.channels(type)) : 0;
+        if (count > 0) {
+            dst.create(count, 1, type);
+            dst.put(0, 0, data);
+        } else {
+            dst.release();
+        }
+    }
+
+    private static void flat_to_Mat(DoubleBuffer data, int type, Mat dst) {
+        int channels = CvType.channels(type);
+        int length = data.remaining();
+        int count = flatCount(length, channels);
+        if (count == 0) {
+            dst.release();
+            return;
+        }
+        dst.create(count, 1, type);
+        if (data.hasArray() && data.arrayOffset() + data.position() == 0
+                && data.array().length % channels == 0) {
+            // put() stops at the end of the Mat, so nothing past the limit is read
+            dst.put(0, 0, data.array());
+            data.position(length);
+        } else {
+            double[] buff = doubleScratch(length);
+            data.get(buff, 0, length);
+            dst.put(0, 0, buff);
+        }
+    }
+
+    private static double[] Mat_to_flat(Mat m, int type, String typeName, double[] dst) {
+        int length = checkColumnVector(m, type, typeName) * CvType.channels(type);
+        double[] res = (dst != null && dst.length == length) ? dst : new double[length];
+        if (length > 0)
+            m.get(0, 0, res);
+        return res;
+    }
+
+    private static void Mat_to_flat(Mat m, int type, String typeName, DoubleBuffer dst) {
+        int channels = CvType.channels(type);
+        int length = checkColumnVector(m, type, typeName) * channels;
+        if (length == 0)
+            return;
+        if (dst.remaining() < length)
+            throw new java.nio.BufferOverflowException();
+        if (dst.hasArray() && dst.arrayOffset() + dst.position() == 0
+                && dst.array().length % channels == 0) {
+            // get() stops at the end of the Mat, so nothing past length is written
+            m.get(0, 0, dst.array());
+            dst.position(length);
+        } else {
+            double[] buff = doubleScratch(length);
+            m.get(0, 0, buff);
+            dst.put(buff, 0, length);
+        }
+    }
+
+    private static void flat_to_Mat(byte[] data, int type, Mat dst) {
+        int count = (data != null) ? flatCount(data.length, CvType.channels(type)) : 0;
+        if (count > 0) {
+            dst.create(count, 1, type);
+            dst.put(0, 0, data);
+        } else {
+            dst.release();
+        }
+    }
+
+    private static void flat_to_Mat(ByteBuffer data, int type, Mat dst) {
+        int channels = CvType.channels(type);
+        int length = data.remaining();
+        int count = flatCount(length, channels);
+        if (count == 0) {
+            dst.release();
+            return;
+        }
+        dst.create(count, 1, type);
+        if (data.hasArray()) {
+            dst.put(0, 0, data.array(), data.arrayOffset() + data.position(), length);
+            data.position(data.position() + length);
+        } else {
+            byte[] buff = byteScratch(length);
+            data.get(buff, 0, length);
+            dst.put(0, 0, buff);
+        }
+    }
+
+    private static byte[] Mat_to_flat(Mat m, int type, String typeName, byte[] dst) {
+        int length = checkColumnVector(m, type, typeName) * CvType.channels(type);
+        byte[] res = (dst != null && dst.length == length) ? dst : new byte[length];
+        if (length > 0)
+            m.get(0, 0, res);
+        return res;
+    }
+
+    private static void Mat_to_flat(Mat m, int type, String typeName, ByteBuffer dst) {
+        int channels = CvType.channels(type);
+        int length = checkColumnVector(m, type, typeName) * channels;
+        if (length == 0)
+            return;
+        if (dst.remaining() < length)
+            throw new java.nio.BufferOverflowException();
+        if (dst.hasArray() && dst.arrayOffset() + dst.position() == 0
+                && dst.array().length % channels == 0) {
+            // get() stops at the end of the Mat, so nothing past length is written
+            m.get(0, 0, dst.array());
+            dst.position(length);
+        } else {
+            byte[] buff = byteScratch(length);
+            m.get(0, 0, buff);
+            dst.put(buff, 0, length);
+        }
+    }
+
+    // Mat.put() and get() stop at the end of the Mat but want whole elements, so the scratch
+    // arrays only grow, in steps that are a multiple of every channel count used here (1 to
+    // 5 and 7). Vectors longer than SCRATCH_LIMIT get an array of their own instead, so that
+    // a thread doesn't keep its largest vector ever alive.
+    private static final int SCRATCH_STEP = 420;
+    private static final int SCRATCH_LIMIT = 1 << 16;
+
+    private static int scratchCapacity(int length) {
+        return (length + SCRATCH_STEP - 1) / SCRATCH_STEP * SCRATCH_STEP;
+    }
+
+    private static final ThreadLocal<float[]> sFloatScratch = new ThreadLocal<float[]>();
+
+    private static float[] floatScratch(int length) {
+        if (length > SCRATCH_LIMIT)
+            return new float[length];
+        float[] buff = sFloatScratch.get();
+        if (buff == null || buff.length < length) {
+            buff = new float[scratchCapacity(length)];
+            sFloatScratch.set(buff);
+        }
+        return buff;
+    }
+
+    private static final ThreadLocal<int[]> sIntScratch = new ThreadLocal<int[]>();
+
+    private static int[] intScratch(int length) {
+        if (length > SCRATCH_LIMIT)
+            return new int[length];
+        int[] buff = sIntScratch.get();
+        if (buff == null || buff.length < length) {
+            buff = new int[scratchCapacity(length)];
+            sIntScratch.set(buff);
+        }
+        return buff;
+    }
+
+    private static final ThreadLocal<double[]> sDoubleScratch = new ThreadLocal<double[]>();
+
+    private static double[] doubleScratch(int length) {
+        if (length > SCRATCH_LIMIT)
+            return new double[length];
+        double[] buff = sDoubleScratch.get();
+        if (buff == null || buff.length < length) {
+            buff = new double[scratchCapacity(length)];
+            sDoubleScratch.set(buff);
+        }
+        return buff;
+    }
+
+    private static final ThreadLocal<byte[]> sByteScratch = new ThreadLocal<byte[]>();
+
+    private static byte[] byteScratch(int length) {
+        if (length > SCRATCH_LIMIT)
+            return new byte[length];
+        byte[] buff = sByteScratch.get();
+        if (buff == null || buff.length < length) {
+            buff = new byte[scratchCapacity(length)];
+            sByteScratch.set(buff);
+        }
+        return buff;
+    }
 }